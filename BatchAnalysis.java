@@ -0,0 +1,100 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/** Offline analysis of a file of positions.  Each non-blank input line
+ *  not starting with '#' holds a position in the format of
+ *  Board.encodedBoard().  The positions are searched in parallel on a
+ *  work-stealing pool, sharing one transposition table, and for each
+ *  one a line giving the best move, its score for the side to move, the
+ *  number of nodes searched and the time taken in milliseconds is
+ *  written, in input order, as soon as it and all earlier results are
+ *  available.  Malformed positions and positions with no moves produce
+ *  a line starting with '#' in place of a result.
+ *  @author Philipp
+ */
+final class BatchAnalysis {
+
+    /** Seed of the evaluation noise of every search, so that results do
+     *  not vary from run to run for want of a seed. */
+    private static final long SEED = 0;
+
+    /** Number of results that may be pending, per worker thread. */
+    private static final int WINDOW_PER_THREAD = 4;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    /** An analysis that searches each position within LIMITS, using
+     *  THREADS worker threads. */
+    BatchAnalysis(SearchLimits limits, int threads) {
+        _limits = limits;
+        _threads = threads;
+        _table = new TranspositionTable(TranspositionTable.DEFAULT_BITS);
+    }
+
+    /** Analyze the positions read from INPUT, writing the results to
+     *  OUTPUT.  Returns the number of positions read. */
+    int run(BufferedReader input, PrintStream output) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        Queue<ForkJoinTask<String>> pending = new ArrayDeque<>();
+        int window = WINDOW_PER_THREAD * _threads;
+        int count;
+        try {
+            count = 0;
+            output.println("# move score nodes ms");
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                String position = line.trim();
+                if (position.isEmpty() || position.startsWith("#")) {
+                    continue;
+                }
+                count += 1;
+                pending.add(pool.submit(() -> analyze(position)));
+                while (pending.size() >= window
+                       || (!pending.isEmpty() && pending.peek().isDone())) {
+                    output.println(pending.remove().join());
+                }
+            }
+            while (!pending.isEmpty()) {
+                output.println(pending.remove().join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        output.flush();
+        return count;
+    }
+
+    /** Return the result line for POSITION. */
+    private String analyze(String position) {
+        Board board;
+        try {
+            board = Board.decode(position);
+        } catch (IllegalArgumentException excp) {
+            return String.format("# error: %s", excp.getMessage());
+        }
+        Search search = new Search(SEED, _table);
+        long start = System.nanoTime();
+        Move best = search.findMove(board, _limits);
+        long millis = (System.nanoTime() - start) / NANOS_PER_MS;
+        if (best == null) {
+            return "# no legal moves";
+        }
+        return String.format("%s %d %d %d", best, search.score(),
+                             search.stats().nodes(), millis);
+    }
+
+    /** Bounds on the search of each position. */
+    private final SearchLimits _limits;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** Transposition table shared by the searches. */
+    private final TranspositionTable _table;
+}
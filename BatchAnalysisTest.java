@@ -0,0 +1,60 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the batch analysis of position files.
+ *  @author Philipp
+ */
+public class BatchAnalysisTest {
+
+    /** Results appear in input order, one per position, with comments
+     *  skipped and malformed positions reported in place. */
+    @Test
+    public void resultsInInputOrder() throws IOException {
+        Board b = new Board();
+        String[] positions = new String[POSITIONS];
+        for (int k = 0; k < POSITIONS; k += 1) {
+            positions[k] = b.encodedBoard();
+            b.makeMove(b.legalMoves(b.turn()).get(k));
+        }
+        StringBuilder input = new StringBuilder("# positions\n");
+        for (String position : positions) {
+            input.append(position).append("\n\n");
+        }
+        input.append("Bxx\n");
+        String[] lines = analyze(input.toString(), THREADS);
+        assertEquals(POSITIONS + 2, lines.length);
+        assertTrue(lines[POSITIONS + 1].startsWith("# error"));
+        for (int k = 0; k < POSITIONS; k += 1) {
+            String[] alone = analyze(positions[k] + "\n", 1);
+            assertEquals(alone[1].split(" ")[0], lines[k + 1].split(" ")[0]);
+        }
+    }
+
+    /** Return the lines produced by analyzing INPUT to a fixed depth
+     *  using THREADS threads. */
+    private static String[] analyze(String input, int threads)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        new BatchAnalysis(SearchLimits.DEFAULT.withDepth(DEPTH), threads)
+            .run(new BufferedReader(new StringReader(input)), out);
+        return bytes.toString().split("\\R");
+    }
+
+    /** Number of positions analyzed. */
+    private static final int POSITIONS = 6;
+
+    /** Number of worker threads. */
+    private static final int THREADS = 3;
+
+    /** Search depth. */
+    private static final int DEPTH = 2;
+}
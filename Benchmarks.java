@@ -0,0 +1,213 @@
+package tablut;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+import static tablut.Square.SQUARE_LIST;
+
+/** Micro-benchmarks for the Board and AI hot paths.  Each benchmark is
+ *  run against a fixed set of positions (opening, middlegame and a sparse
+ *  endgame) for a number of timed iterations after a warm-up period, and
+ *  reports the mean time and the bytes allocated per operation.
+ *
+ *  Usage: java tablut.Benchmarks [--ms=N] [--iterations=N] [--filter=STR]
+ *  @author Philipp
+ */
+public class Benchmarks {
+
+    /** Default length of a single measurement iteration, in
+     *  milliseconds. */
+    private static final int DEFAULT_ITERATION_MS = 500;
+
+    /** Default number of measurement iterations per benchmark. */
+    private static final int DEFAULT_ITERATIONS = 5;
+
+    /** Radix of numeric options. */
+    private static final int RADIX = 10;
+
+    /** Number of operations between clock readings. */
+    private static final int BATCH = 64;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    /** Seed of the evaluation noise of the searches, so that runs are
+     *  comparable. */
+    private static final long SEED = 61;
+
+    /** Moves leading to the middlegame position (AI self-play). */
+    static final String[] MIDDLEGAME = {
+        "e8-g", "c5-3", "i4-h", "c3-2", "h4-1", "e3-a", "g8-h", "a3-h",
+        "b5-7", "e6-d", "a5-b", "e4-c", "e2-4", "h3-e", "i5-4", "d6-7",
+        "e1-2", "e3-4", "d1-4", "c4-6"
+    };
+
+    /** Pieces of the sparse endgame position, as piece symbol followed
+     *  by square. */
+    static final String[] ENDGAME = {
+        "Kd6", "Wc3", "Wg5", "Ba5", "Bb7", "Bf7", "Be2", "Bh4", "Bg8"
+    };
+
+    /** Run the benchmarks selected by ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--ms=(\\d+) --iterations=(\\d+) --filter=",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.Benchmarks [--ms=N]"
+                               + " [--iterations=N] [--filter=STR]");
+            System.exit(1);
+        }
+        Benchmarks bench =
+            new Benchmarks(options.getInt("--ms", RADIX,
+                                          DEFAULT_ITERATION_MS),
+                           options.getInt("--iterations", RADIX,
+                                          DEFAULT_ITERATIONS),
+                           options.getFirst("--filter", ""));
+        bench.runAll();
+        System.exit(0);
+    }
+
+    /** A benchmark harness that measures ITERATIONS iterations of MS
+     *  milliseconds each for all benchmarks whose name contains FILTER. */
+    Benchmarks(int ms, int iterations, String filter) {
+        _iterationNanos = ms * NANOS_PER_MS;
+        _iterations = iterations;
+        _filter = filter;
+        _threads = (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+    }
+
+    /** Return the benchmark positions, in order opening, middlegame,
+     *  endgame. */
+    static List<Board> positions() {
+        List<Board> result = new ArrayList<>();
+        result.add(new Board());
+        Board middle = new Board();
+        for (String mv : MIDDLEGAME) {
+            middle.makeMove(Move.mv(mv));
+        }
+        result.add(middle);
+        Board end = new Board();
+        for (Square s : SQUARE_LIST) {
+            end.put(EMPTY, s);
+        }
+        for (String spec : ENDGAME) {
+            Piece p = spec.charAt(0) == 'K' ? KING
+                : spec.charAt(0) == 'W' ? WHITE : BLACK;
+            end.put(p, sq(spec.substring(1)));
+        }
+        end.clearUndo();
+        result.add(end);
+        return result;
+    }
+
+    /** Names of the positions returned by positions(). */
+    static final String[] POSITION_NAMES = { "opening", "middle", "endgame" };
+
+    /** Run every selected benchmark on every position. */
+    void runAll() {
+        System.out.printf("%-16s %-9s %12s %10s %10s%n",
+                          "benchmark", "position", "ns/op", "+-", "B/op");
+        List<Board> boards = positions();
+        for (int i = 0; i < boards.size(); i += 1) {
+            Board b = boards.get(i);
+            String pos = POSITION_NAMES[i];
+            Search search = new Search(SEED, _table);
+            SearchLimits depth2 = SearchLimits.DEFAULT.withDepth(2);
+            IntMoveList moves = new IntMoveList();
+            b.legalMoves(b.turn(), moves);
+            IntMoveList scratch = new IntMoveList();
+
+            run("legalMoves", pos, b, x -> {
+                    scratch.clear();
+                    x.legalMoves(x.turn(), scratch);
+                    return scratch.size();
+                });
+            run("makeMove+undo", pos, b, x -> {
+                    int m = moves.get(_counter++ % moves.size());
+                    x.makeMove(m);
+                    x.undo();
+                    return x.moveCount();
+                });
+            run("copy", pos, b, x -> new Board(x).moveCount());
+            run("tryCapture", pos, b, x -> {
+                    int n = 0;
+                    for (Square s : x.pieceLocations(x.turn())) {
+                        n += Integer.bitCount(x.tryCapture(s));
+                    }
+                    return n;
+                });
+            run("encodedBoard", pos, b, x -> x.encodedBoard().length());
+            run("staticScore", pos, b, x -> search.staticScore(x));
+            run("search2", pos, b,
+                x -> search.findMove(x, depth2).hashCode());
+        }
+    }
+
+    /** Measure OP on BOARD as benchmark NAME at position POS and print
+     *  the result, unless NAME is excluded by the filter. */
+    private void run(String name, String pos, Board board,
+                     ToIntFunction<Board> op) {
+        if (!name.contains(_filter)) {
+            return;
+        }
+        long tid = Thread.currentThread().getId();
+        measure(board, op, _iterationNanos);
+        double[] nsPerOp = new double[_iterations];
+        long ops = 0, bytes = 0;
+        for (int k = 0; k < _iterations; k += 1) {
+            long before = _threads.getThreadAllocatedBytes(tid);
+            long[] result = measure(board, op, _iterationNanos);
+            bytes += _threads.getThreadAllocatedBytes(tid) - before;
+            ops += result[0];
+            nsPerOp[k] = (double) result[1] / result[0];
+        }
+        double mean = 0, var = 0;
+        for (double v : nsPerOp) {
+            mean += v / _iterations;
+        }
+        for (double v : nsPerOp) {
+            var += (v - mean) * (v - mean) / _iterations;
+        }
+        System.out.printf("%-16s %-9s %12.1f %10.1f %10d%n",
+                          name, pos, mean, Math.sqrt(var), bytes / ops);
+    }
+
+    /** Apply OP repeatedly to BOARD for about NANOS nanoseconds.  Return
+     *  the number of operations performed and the elapsed nanoseconds. */
+    private long[] measure(Board board, ToIntFunction<Board> op, long nanos) {
+        long ops = 0;
+        long start = System.nanoTime(), now = start;
+        while (now - start < nanos) {
+            for (int i = 0; i < BATCH; i += 1) {
+                _sink += op.applyAsInt(board);
+            }
+            ops += BATCH;
+            now = System.nanoTime();
+        }
+        return new long[] { ops, now - start };
+    }
+
+    /** Length of one measurement iteration, in nanoseconds. */
+    private final long _iterationNanos;
+    /** Number of measurement iterations. */
+    private final int _iterations;
+    /** Only benchmarks whose names contain this string are run. */
+    private final String _filter;
+    /** Transposition table used by the searches. */
+    private final TranspositionTable _table =
+        new TranspositionTable(TranspositionTable.DEFAULT_BITS);
+    /** Source of per-thread allocation counts. */
+    private final com.sun.management.ThreadMXBean _threads;
+    /** Rotating index used to select moves. */
+    private int _counter;
+    /** Accumulates results so that the JIT cannot discard the work. */
+    private volatile int _sink;
+}
@@ -1,11 +1,9 @@
 package tablut;
 
+import java.util.Arrays;
 import java.util.Formatter;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Stack;
 
-import static tablut.Move.ROOK_MOVES;
 import static tablut.Piece.*;
 import static tablut.Square.*;
 import static tablut.Utils.error;
@@ -53,6 +51,67 @@ class Board {
         sq(4, 6), sq(4, 2), sq(2, 4), sq(6, 4)
     };
 
+    /** Contents of board cells: the value() of the Piece on a square, or
+     *  OFF for the border cells of a padded board array. */
+    private static final byte EMPTY_CELL = (byte) EMPTY.value(),
+        WHITE_CELL = (byte) WHITE.value(),
+        BLACK_CELL = (byte) BLACK.value(),
+        KING_CELL = (byte) KING.value(),
+        OFF = (byte) Piece.values().length;
+
+    /** Padded-array index of the throne. */
+    private static final int THRONE_CELL = THRONE.padded();
+
+    /** Initial capacity of the undo history. */
+    private static final int INITIAL_HISTORY = 64;
+
+    /** Position of the captured pieces within an undo record. */
+    private static final int CAPTURE_SHIFT = 2 * Move.SQ_BITS;
+
+    /** Mask selecting a piece value. */
+    private static final int PIECE_MASK = 3;
+
+    /** Flag set in the undo record of a move that led to a position not
+     *  encountered before. */
+    private static final int NEW_POSITION = 1 << (CAPTURE_SHIFT + 8);
+
+    /** Number of black pieces next to the occupied throne that make it
+     *  hostile to White. */
+    private static final int BLACK_HOSTILE_THRONE = 3;
+
+    /** NEIGHBORS[c][d] and PARTNERS[c][d] are the cells one and two steps
+     *  from padded-array cell C in direction d (as for Square.rookMove),
+     *  for cells of squares.  A piece moving to C captures the enemy
+     *  piece on the neighbor when the partner is hostile to it.
+     *  PARTNERS[c][d] is -1 when it would be off the board. */
+    private static final int[][] NEIGHBORS = new int[PADDED_SIZE][4],
+        PARTNERS = new int[PADDED_SIZE][4];
+
+    /** KING_GUARDED[c] is true iff padded-array cell c is the throne or
+     *  next to it, where the king is captured only when surrounded on
+     *  all four sides. */
+    private static final boolean[] KING_GUARDED = new boolean[PADDED_SIZE];
+
+    /** NEXT_TO_THRONE[c] is true iff padded-array cell c is next to the
+     *  throne. */
+    private static final boolean[] NEXT_TO_THRONE =
+        new boolean[PADDED_SIZE];
+
+    static {
+        for (Square sq : SQUARE_LIST) {
+            int c = sq.padded();
+            for (int dir = 0; dir < 4; dir += 1) {
+                NEIGHBORS[c][dir] = c + STEPS[dir];
+                PARTNERS[c][dir] =
+                    sq.rookMove(dir, 2) == null ? -1 : c + 2 * STEPS[dir];
+            }
+        }
+        KING_GUARDED[THRONE_CELL] = true;
+        for (Square sq : SURROUNDING_THRONE) {
+            KING_GUARDED[sq.padded()] = NEXT_TO_THRONE[sq.padded()] = true;
+        }
+    }
+
     /** Initializes a game board with SIZE squares on a side in the
      *  initial position. */
     Board() {
@@ -64,17 +123,26 @@ class Board {
         copy(model);
     }
 
-    /** Copies MODEL into me. */
+    /** Copies MODEL into me, including its undo history and move limit.
+     *  The parts of a board already set up are reused. */
     void copy(Board model) {
         if (model == this) {
             return;
         }
-        init();
-        _stateSetBlack = (HashSet<Square>) model._stateSetBlack.clone();
-        _stateSetWhite = (HashSet<Square>) model._stateSetWhite.clone();
-        _state.copy(model._state);
-        _undoStack = (Stack<Board.State>) model._undoStack.clone();
-        _undoSet = (HashSet<Board.State>) model._undoSet.clone();
+        if (_state == null) {
+            _stateSetBlack = new SquareSet(model._stateSetBlack);
+            _stateSetWhite = new SquareSet(model._stateSetWhite);
+            _state = new State(model._state);
+            _positions = new KeySet(model._positions);
+        } else {
+            _stateSetBlack.copy(model._stateSetBlack);
+            _stateSetWhite.copy(model._stateSetWhite);
+            _state.copy(model._state);
+            _positions.copy(model._positions);
+        }
+        _history = model._history.clone();
+        _moveCount = model._moveCount;
+        _moveLimit = model._moveLimit;
         _turn = model._turn;
         _repeated = model._repeated;
         _winner = model._winner;
@@ -82,11 +150,11 @@ class Board {
 
     /** Clears the board to the initial position. */
     void init() {
-        _stateSetBlack = new HashSet<Square>();
-        _stateSetWhite = new HashSet<Square>();
+        _stateSetBlack = new SquareSet();
+        _stateSetWhite = new SquareSet();
         _state = new State();
-        _undoStack = new Stack<State>();
-        _undoSet = new HashSet<State>();
+        _history = new int[INITIAL_HISTORY];
+        _positions = new KeySet();
 
         for (Square att : INITIAL_ATTACKERS) {
             put(BLACK, att);
@@ -123,11 +191,12 @@ class Board {
         return _winner;
     }
 
-    /** Record current board by adding to undo stack. */
-    private void record() {
-        _undoStack.push(_state);
-        _undoSet.add(_state);
-        _state = new State(_undoStack.peek());
+    /** Record the current position in the set of positions encountered,
+     *  returning true iff it was not already there.  Positions are
+     *  identified by the keys of their pieces, regardless of the side to
+     *  move. */
+    private boolean record() {
+        return _positions.add(_state.getKey(0));
     }
 
     /** Returns true iff this is a win due to a repeated position. */
@@ -138,7 +207,7 @@ class Board {
     /** Record current position and set winner() next mover if the current
      *  position is a repeat. */
     private void checkRepeated() {
-        if (_undoSet.contains(_state)) {
+        if (_positions.contains(_state.getKey(0))) {
             _winner = _turn.opponent();
             _repeated = true;
         }
@@ -150,6 +219,55 @@ class Board {
         return _moveCount;
     }
 
+    /** Append the packed forms of the moves counted by moveCount() to
+     *  MOVES, in the order they were made. */
+    void moves(IntMoveList moves) {
+        for (int k = 0; k < _moveCount; k += 1) {
+            moves.add(Move.squares(_history[k]));
+        }
+    }
+
+    /** Return the move limit (Integer.MAX_VALUE if there is none). */
+    int moveLimit() {
+        return _moveLimit;
+    }
+
+    /** Return a Zobrist key for the current position and side to move.
+     *  Equal positions have equal keys. */
+    long key() {
+        return symmetricKey(0);
+    }
+
+    /** Return the key() of the image of the current position under
+     *  symmetry T (see Symmetry), with the same side to move. */
+    long symmetricKey(int t) {
+        long key = _state.getKey(t);
+        return _turn == WHITE ? key ^ Zobrist.WHITE_TO_MOVE : key;
+    }
+
+    /** Return the symmetry whose image of the current position has the
+     *  least key.  That image is the canonical form of the position,
+     *  shared by all of its symmetric images. */
+    int canonicalTransform() {
+        int best = 0;
+        long bestKey = _state.getKey(0);
+        for (int t = 1; t < Symmetry.COUNT; t += 1) {
+            long key = _state.getKey(t);
+            if (key < bestKey) {
+                best = t;
+                bestKey = key;
+            }
+        }
+        return best;
+    }
+
+    /** Return the key of the canonical form of the current position.
+     *  Positions that are symmetric images of one another have the same
+     *  canonical key. */
+    long canonicalKey() {
+        return symmetricKey(canonicalTransform());
+    }
+
     /** Return location of the king. */
     Square kingPosition() {
         return _state.getKing();
@@ -209,15 +327,16 @@ class Board {
      *  board.  For this to be true, FROM-TO must be a rook move and the
      *  squares along it, other than FROM, must be empty. */
     boolean isUnblockedMove(Square from, Square to) {
-        int dir = from.direction(to);
-        Square sq = from;
-        while (sq != to) {
-            sq = sq.rookMove(dir, 1);
-            if (_state.get(sq.col(), sq.row()) != EMPTY) {
+        byte[] cells = _state._cells;
+        int step = STEPS[from.direction(to)], end = to.padded();
+        for (int c = from.padded() + step; true; c += step) {
+            if (cells[c] != EMPTY_CELL) {
                 return false;
             }
+            if (c == end) {
+                return true;
+            }
         }
-        return true;
     }
 
     /** Return true iff FROM is a valid starting square for a move. */
@@ -245,6 +364,12 @@ class Board {
         return move != null && isLegal(move.from(), move.to());
     }
 
+    /** Return true iff the packed move MOVE is a legal move in the
+     *  current position. */
+    boolean isLegal(int move) {
+        return isLegal(Move.unpack(move));
+    }
+
     /** Move FROM-TO, assuming this is a legal move. */
     void makeMove(Square from, Square to) {
         if (!isLegal(from, to)) {
@@ -256,12 +381,23 @@ class Board {
         put(EMPTY, from);
         checkRepeated();
         _turn = _turn.opponent();
-        _moveCount += 1;
-        SqList capturePartners = tryCapture(to);
-        for (Square partner : capturePartners) {
-            capture(to, partner);
+        int captures = tryCapture(to);
+        int undo = Move.pack(from.index(), to.index());
+        for (int dir = 0; dir < 4; dir += 1) {
+            if ((captures & (1 << dir)) != 0) {
+                int cell = NEIGHBORS[to.padded()][dir];
+                undo |= _state._cells[cell] << (CAPTURE_SHIFT + 2 * dir);
+                capture(cell);
+            }
         }
-        record();
+        if (_moveCount == _history.length) {
+            _history = Arrays.copyOf(_history, 2 * _moveCount);
+        }
+        if (record()) {
+            undo |= NEW_POSITION;
+        }
+        _history[_moveCount] = undo;
+        _moveCount += 1;
 
         if (_moveCount / 2 >= _moveLimit) {
             _winner = _turn.opponent();
@@ -282,74 +418,67 @@ class Board {
         makeMove(move.from(), move.to());
     }
 
-    /** Returns list of partner squares which pieces in between can
-     * be captured by moving to SQ. */
-    private SqList tryCapture(Square sq) {
-        SqList sl = new SqList();
-        for (int i = 0; i < 4; i += 1) {
-            Piece side = get(sq).side();
-            Square sq2 = sq.rookMove(i, 2);
-            boolean add = false;
-            if (sq2 != null) {
-                Square between = sq.between(sq2);
-                if (get(between).side() == side.opponent()) {
-                    if (get(between) != KING && isAllied(side, sq2)) {
-                        add = true;
-                    } else if (get(between) == KING) {
-                        if (THRONE != between
-                                && !SURROUNDING_THRONE.contains(between)
-                                && isAllied(side, sq2)) {
-                            add = true;
-                        } else {
-                            int count = 0;
-                            for (int j = 0; j < 4; j += 1) {
-                                if (isAllied(side, between.rookMove(j, 1))) {
-                                    count += 1;
-                                }
-                            }
-                            if (count > 3) {
-                                add = true;
-                            }
-                        }
-                    }
-                }
-            }
-            if (add) {
-                sl.add(sq2);
+    /** Move according to the packed move MOVE, assuming it is a legal
+     *  move. */
+    void makeMove(int move) {
+        makeMove(sq(Move.from(move)), sq(Move.to(move)));
+    }
+
+    /** Return the captures made by the piece on SQ, assuming it has just
+     *  moved there: bit d of the result is set iff the enemy piece next to
+     *  SQ in direction d (as for Square.rookMove) is captured.
+     *  Package-private for benchmarking. */
+    int tryCapture(Square sq) {
+        byte[] cells = _state._cells;
+        int p = sq.padded();
+        byte side = sideOf(cells[p]);
+        byte enemy = side == WHITE_CELL ? BLACK_CELL : WHITE_CELL;
+        boolean throne = cells[THRONE_CELL] == EMPTY_CELL
+            || (side == BLACK_CELL
+                && _state._blackNearThrone >= BLACK_HOSTILE_THRONE);
+        int[] neighbors = NEIGHBORS[p], partners = PARTNERS[p];
+        int captures = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            int victim = neighbors[dir], partner = partners[dir];
+            if (partner < 0 || sideOf(cells[victim]) != enemy) {
+                continue;
             }
-        }
-        return sl;
-    }
-
-    /** Returns true if square SQ is allied to side P. */
-    private boolean isAllied(Piece p, Square sq) {
-        Piece side = p.side();
-        if (get(sq).side() == side) {
-            return true;
-        } else if (sq == THRONE && get(THRONE) == EMPTY) {
-            return true;
-        } else if (side == BLACK && sq == THRONE && get(THRONE) != EMPTY) {
-            int count = 0;
-            for (Square surr : SURROUNDING_THRONE) {
-                if (get(surr) == BLACK) {
-                    count += 1;
+            if (cells[victim] == KING_CELL && KING_GUARDED[victim]) {
+                int[] around = NEIGHBORS[victim];
+                if (isAllied(side, around[0], throne)
+                    && isAllied(side, around[1], throne)
+                    && isAllied(side, around[2], throne)
+                    && isAllied(side, around[3], throne)) {
+                    captures |= 1 << dir;
                 }
-            }
-            if (count >= 3) {
-                return true;
+            } else if (isAllied(side, partner, throne)) {
+                captures |= 1 << dir;
             }
         }
-        return false;
+        return captures;
+    }
+
+    /** Return the side (WHITE_CELL or BLACK_CELL) of the piece in a cell
+     *  with contents CELL, or CELL itself if it holds no piece. */
+    private static byte sideOf(byte cell) {
+        return cell == KING_CELL ? WHITE_CELL : cell;
+    }
+
+    /** Returns true if padded-array cell CELL is hostile to the enemies
+     *  of SIDE (WHITE_CELL or BLACK_CELL), where THRONE is true iff the
+     *  throne is. */
+    private boolean isAllied(byte side, int cell, boolean throne) {
+        return sideOf(_state._cells[cell]) == side
+            || (cell == THRONE_CELL && throne);
     }
 
-    /** Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     *  SQ0 and the necessary conditions are satisfied. */
-    private void capture(Square sq0, Square sq2) {
-        Square between = sq0.between(sq2);
-        if (get(between) == KING) {
+    /** Capture the piece in padded-array cell CELL. */
+    private void capture(int cell) {
+        Square victim = sq(Square.indexOfCell(cell));
+        if (get(victim) == KING) {
             _state._kingPosition = null;
         }
-        put(EMPTY, between);
+        put(EMPTY, victim);
     }
 
     /** Undo one move.  Has no effect on the initial board. */
@@ -360,81 +489,86 @@ class Board {
     }
 
     /** Remove record of current position in the set of positions encountered,
-     *  unless it is a repeated position or we are at the first move. */
+     *  unless it was encountered before the last move, and restore the
+     *  previous position from the undo record of the last move. */
     private void undoPosition() {
-        _state = new State(_undoStack.pop());
-        _undoSet.remove(_state);
-        _state = new State(_undoStack.pop());
-        _undoSet.remove(_state);
         _moveCount -= 1;
+        int undo = _history[_moveCount];
+        if ((undo & NEW_POSITION) != 0) {
+            _positions.remove(_state.getKey(0));
+        }
+        Square from = sq(Move.from(undo)), to = sq(Move.to(undo));
+        put(get(to), from);
+        put(EMPTY, to);
+        for (int dir = 0; dir < 4; dir += 1) {
+            int captured = (undo >>> (CAPTURE_SHIFT + 2 * dir)) & PIECE_MASK;
+            if (captured != EMPTY_CELL) {
+                put(Piece.ofValue(captured),
+                    sq(Square.indexOfCell(NEIGHBORS[to.padded()][dir])));
+            }
+        }
         _turn = _turn.opponent();
         _repeated = false;
         _winner = null;
-        _stateSetWhite = new HashSet<Square>();
-        _stateSetBlack = new HashSet<Square>();
-        for (Square sq : SQUARE_LIST) {
-            switch (get(sq).side()) {
-            case WHITE:
-                _stateSetWhite.add(sq);
-                break;
-            case BLACK:
-                _stateSetBlack.add(sq);
-                break;
-            default:
-            }
-        }
-        record();
     }
 
     /** Clear the undo stack and board-position counts. Does not modify the
      *  current position or win status. */
     void clearUndo() {
-        while (_undoStack.size() > 1) {
-            _undoStack.pop();
-        }
-        _undoSet.clear();
-        _undoSet.add(_undoStack.peek());
+        _positions.clear();
+        record();
         _moveCount = 0;
     }
 
     /** Return a new mutable list of all legal moves on the current board for
      *  SIDE (ignoring whose turn it is at the moment). */
     List<Move> legalMoves(Piece side) {
-        Move.MoveList moves = new Move.MoveList();
-        HashSet<Square> locs = pieceLocations(side);
+        IntMoveList moves = new IntMoveList();
+        legalMoves(side, moves);
+        return moves.toMoves();
+    }
+
+    /** Append the packed forms of the moves returned by legalMoves(SIDE)
+     *  to MOVES, in the same order, flagging king moves with
+     *  Move.KING_FLAG. */
+    void legalMoves(Piece side, IntMoveList moves) {
+        byte[] cells = _state._cells;
+        SquareSet locs = pieceLocations(side);
         if (side == WHITE) {
-            int i = kingPosition().index();
-            for (int dir = 0; dir < 4; dir += 1) {
-                for (Move m : ROOK_MOVES[i][dir]) {
-                    if (get(m.to()) != EMPTY) {
-                        break;
-                    }
-                    if (isLegal(m)) {
-                        moves.add(m);
+            Square king = kingPosition();
+            if (_winner == null && _turn == WHITE) {
+                int from = king.padded(), i = king.index();
+                for (int dir = 0; dir < 4; dir += 1) {
+                    int step = STEPS[dir];
+                    for (int c = from + step; cells[c] == EMPTY_CELL;
+                         c += step) {
+                        moves.add(Move.pack(i, Square.indexOfCell(c))
+                                  | Move.KING_FLAG);
                     }
                 }
             }
         }
-        for (Square sq : locs) {
-            if (get(sq) == KING) {
+        for (int i = locs.first(); i >= 0; i = locs.next(i)) {
+            int from = sq(i).padded();
+            if (cells[from] == KING_CELL) {
                 continue;
             }
-            int i = sq.index();
             for (int dir = 0; dir < 4; dir += 1) {
-                for (Move m : ROOK_MOVES[i][dir]) {
-                    if (get(m.to()) != EMPTY || m.to() == THRONE) {
-                        break;
-                    }
-                    moves.add(m);
+                int step = STEPS[dir];
+                for (int c = from + step;
+                     cells[c] == EMPTY_CELL && c != THRONE_CELL;
+                     c += step) {
+                    moves.add(Move.pack(i, Square.indexOfCell(c)));
                 }
             }
         }
-        return moves;
     }
 
     /** Return true iff SIDE has a legal move. */
     boolean hasMove(Piece side) {
-        return legalMoves(side).size() > 0;
+        _hasMoveList.clear();
+        legalMoves(side, _hasMoveList);
+        return !_hasMoveList.isEmpty();
     }
 
     /** Sets turn to SIDE. Useful for testing. */
@@ -474,7 +608,7 @@ class Board {
     }
 
     /** Return the locations of all pieces on SIDE. */
-    HashSet<Square> pieceLocations(Piece side) {
+    SquareSet pieceLocations(Piece side) {
         assert side != EMPTY;
         return side.side() == WHITE ? _stateSetWhite : _stateSetBlack;
     }
@@ -490,6 +624,73 @@ class Board {
         return new String(result);
     }
 
+    /** Return a new Board holding the position ENCODED, in the format
+     *  produced by encodedBoard(), with nothing to undo. */
+    static Board decode(String encoded) {
+        Board result = new Board();
+        result.setPosition(encoded);
+        return result;
+    }
+
+    /** Set the position, side to move and piece sets from ENCODED, in the
+     *  format produced by encodedBoard() (in either case), in a single
+     *  pass over it, and clear the undo information and the winner.  It
+     *  is an error if ENCODED is not in that format or does not place
+     *  exactly one king, in which case the board is unchanged. */
+    void setPosition(String encoded) {
+        if (encoded.length() != NUM_SQUARES + 1) {
+            throw error("board must have %d characters", NUM_SQUARES + 1);
+        }
+        Piece turn = pieceOf(encoded.charAt(0));
+        if (turn != WHITE && turn != BLACK) {
+            throw error("invalid side to move: %c", encoded.charAt(0));
+        }
+        State state = new State();
+        SquareSet white = new SquareSet(), black = new SquareSet();
+        int kings = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Piece p = pieceOf(encoded.charAt(i + 1));
+            Square s = sq(i);
+            if (p == null) {
+                throw error("invalid piece at %s: %c", s,
+                            encoded.charAt(i + 1));
+            } else if (p == EMPTY) {
+                continue;
+            }
+            state.set(p, s.col(), s.row());
+            if (p == BLACK) {
+                black.add(s);
+            } else {
+                white.add(s);
+            }
+            if (p == KING) {
+                state.setKing(s);
+                kings += 1;
+            }
+        }
+        if (kings != 1) {
+            throw error("board must have exactly one king");
+        }
+        _state = state;
+        _stateSetWhite = white;
+        _stateSetBlack = black;
+        _turn = turn;
+        _repeated = false;
+        _winner = null;
+        clearUndo();
+    }
+
+    /** Return the Piece whose symbol, in either case, is C, or null if
+     *  there is none. */
+    private static Piece pieceOf(char c) {
+        for (Piece p : Piece.values()) {
+            if (p.toString().charAt(0) == Character.toUpperCase(c)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
     /** Piece whose turn it is (WHITE or BLACK). */
     private Piece _turn;
     /** Cached value of winner on this board, or null if it has not been
@@ -504,34 +705,32 @@ class Board {
      *  @author Philipp
      */
     private class State {
-        /** Pieces on Tablut board. */
-        private Piece[][] _stateMatrix;
+        /** Contents of the cells of the padded board array (see
+         *  Square.padded): the value() of the Piece on each square, and
+         *  OFF on the border. */
+        private final byte[] _cells = new byte[PADDED_SIZE];
+        /** Number of black pieces next to the throne. */
+        private int _blackNearThrone;
         /** Position of king. */
         private Square _kingPosition;
+        /** Zobrist keys of the images of the pieces in _stateMatrix under
+         *  each symmetry. */
+        private final long[] _keys = new long[Symmetry.COUNT];
 
-        /** Initialize state matrix with default board size. */
+        /** An empty board. */
         State() {
-            this(SIZE);
-        }
-
-        /** Initialize board with SIZE rows and columns. */
-        State(int size) {
-            _stateMatrix = new Piece[size][size];
-            for (int i = 0; i < SIZE; i += 1) {
-                for (int j = 0; j < SIZE; j += 1) {
-                    _stateMatrix[i][j] = EMPTY;
-                }
+            Arrays.fill(_cells, OFF);
+            for (Square sq : SQUARE_LIST) {
+                _cells[sq.padded()] = EMPTY_CELL;
             }
         }
 
         /** Copy STATE into me. */
         void copy(State state) {
-            for (int i = 0; i < _stateMatrix.length; i += 1) {
-                for (int j = 0; j < _stateMatrix[0].length; j += 1) {
-                    _stateMatrix[i][j] = state.get(i, j);
-                }
-            }
+            System.arraycopy(state._cells, 0, _cells, 0, PADDED_SIZE);
+            _blackNearThrone = state._blackNearThrone;
             _kingPosition = state._kingPosition;
+            System.arraycopy(state._keys, 0, _keys, 0, _keys.length);
         }
 
         @Override
@@ -568,18 +767,34 @@ class Board {
 
         /** Initialize by copying STATE into me. */
         State(State state) {
-            this();
             copy(state);
         }
 
         /** Returns piece at COL and ROW. */
         Piece get(int col, int row) {
-            return _stateMatrix[col][row];
+            return Piece.ofValue(_cells[sq(col, row).padded()]);
         }
 
         /** Set piece at COL and ROW to P. */
         void set(Piece p, int col, int row) {
-            _stateMatrix[col][row] = p;
+            Square sq = sq(col, row);
+            int index = sq.index(), cell = sq.padded();
+            int old = _cells[cell];
+            for (int t = 0; t < _keys.length; t += 1) {
+                long[][] keys = Zobrist.SYMMETRIC_KEYS[t];
+                _keys[t] ^= keys[old][index] ^ keys[p.value()][index];
+            }
+            _cells[cell] = (byte) p.value();
+            if (NEXT_TO_THRONE[cell]) {
+                _blackNearThrone += (p == BLACK ? 1 : 0)
+                    - (old == BLACK_CELL ? 1 : 0);
+            }
+        }
+
+        /** Returns the Zobrist key of the image of the pieces under
+         *  symmetry T. */
+        long getKey(int t) {
+            return _keys[t];
         }
 
         /** Returns king position. */
@@ -596,12 +811,12 @@ class Board {
         public int hashCode() {
             int hash = 0;
             for (int i = 0; i < 4; i += 1) {
-                hash |= _stateMatrix[4][i].value() << 2 * i;
-                hash |= _stateMatrix[i][4].value() << 2 * (i + 8);
+                hash |= _cells[sq(4, i).padded()] << 2 * i;
+                hash |= _cells[sq(i, 4).padded()] << 2 * (i + 8);
             }
             for (int i = 5; i < 9; i += 1) {
-                hash += _stateMatrix[4][i].value() << 2 * (i - 1);
-                hash += _stateMatrix[i][4].value() << 2 * (i + 7);
+                hash += _cells[sq(4, i).padded()] << 2 * (i - 1);
+                hash += _cells[sq(i, 4).padded()] << 2 * (i + 7);
             }
             return hash;
         }
@@ -609,28 +824,26 @@ class Board {
         @Override
         public boolean equals(Object obj) {
             assert (obj instanceof State);
-            State st = (State) obj;
-            for (int i = 0; i < SIZE; i += 1) {
-                for (int j = 0;  j < SIZE; j += 1) {
-                    if (_stateMatrix[i][j] != st.get(i, j)) {
-                        return false;
-                    }
-                }
-            }
-            return true;
+            return Arrays.equals(_cells, ((State) obj)._cells);
         }
     }
 
     /** Current state of board. */
     private State _state;
     /** Positions of all black pieces. */
-    private HashSet<Square> _stateSetBlack;
+    private SquareSet _stateSetBlack;
     /** Positions of all white pieces. */
-    private HashSet<Square> _stateSetWhite;
-    /** Stack that holds last board states for undoing. */
-    private Stack<State> _undoStack;
-    /** Set that holds all old positions. */
-    private HashSet<State> _undoSet;
+    private SquareSet _stateSetWhite;
+    /** Undo records of the moves made, _history[0 .. _moveCount-1]:
+     *  each the packed move (without flags), with the values of the
+     *  pieces it captured in direction d in the two bits at
+     *  CAPTURE_SHIFT + 2 * d, and NEW_POSITION if it led to a new
+     *  position. */
+    private int[] _history;
+    /** Keys of the pieces of all positions encountered. */
+    private KeySet _positions;
     /** Stores the maximum number of moves. */
     private int _moveLimit;
+    /** Scratch list for hasMove. */
+    private final IntMoveList _hasMoveList = new IntMoveList();
 }
@@ -0,0 +1,532 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static tablut.Board.*;
+import static tablut.Piece.*;
+import static tablut.Square.*;
+
+/** Differential testing of Board against ReferenceBoard.  Random games
+ *  are played on both in lockstep, and after every step the two must
+ *  agree on the position, the side to move, the number of moves, the
+ *  winner, whether the position was repeated, and the sets of legal
+ *  moves of both sides.  Games start from the initial position or from
+ *  a random position (with the king usually on or next to the throne,
+ *  where its capture follows special rules), sometimes have a move
+ *  limit, and sometimes undo moves.  Moves next to enemy pieces are
+ *  favored, so that captures are frequent.
+ *
+ *  Games are played in parallel on a work-stealing pool.  Game number N
+ *  of a run depends only on the seed and N, and a run reports the
+ *  lowest-numbered game that diverged, so that results do not depend on
+ *  the number of threads.  A divergence is shrunk before it is reported:
+ *  steps and pieces of the starting position are removed, and leading
+ *  steps are folded into the starting position, for as long as the two
+ *  boards still disagree, leaving a short sequence of moves that exhibits
+ *  the difference.
+ *  @author Philipp
+ */
+final class BoardFuzzer {
+
+    /** Step of a script that undoes a move; other steps are packed
+     *  moves. */
+    static final int UNDO = -1;
+
+    /** Largest number of steps in a game. */
+    static final int MAX_STEPS = 300;
+
+    /** Largest move limit of a game. */
+    private static final int MAX_LIMIT = 60;
+
+    /** Odds against a game starting from a random position, having a
+     *  move limit, and undoing a move at any step, respectively. */
+    private static final int RANDOM_START_ODDS = 2, LIMIT_ODDS = 4,
+        UNDO_ODDS = 16;
+
+    /** Odds against the king of a random position being placed anywhere
+     *  on the board, rather than on or next to the throne. */
+    private static final int KING_ANYWHERE_ODDS = 4;
+
+    /** Largest numbers of black and white pieces (other than the king)
+     *  in a random position. */
+    private static final int MAX_BLACK = INITIAL_ATTACKERS.length,
+        MAX_WHITE = INITIAL_DEFENDERS.length;
+
+    /** Multiplier that spreads game numbers over seeds. */
+    private static final long SEED_MIX = 0x9E3779B97F4A7C15L;
+
+    /** A fuzzer whose games are determined by SEED, comparing Board with
+     *  ReferenceBoard. */
+    BoardFuzzer(long seed) {
+        this(seed, ReferenceBoard::new);
+    }
+
+    /** A fuzzer whose games are determined by SEED, comparing Board with
+     *  the boards returned by REFERENCE for a starting position in the
+     *  format of Board.encodedBoard(). */
+    BoardFuzzer(long seed, Function<String, ReferenceBoard> reference) {
+        _seed = seed;
+        _reference = reference;
+    }
+
+    /** Play games 0 .. GAMES-1 on THREADS threads and return the shrunk
+     *  script of the lowest-numbered game on which the boards diverge, or
+     *  null if there is none. */
+    Script run(long games, int threads) {
+        AtomicLong next = new AtomicLong(),
+            firstFailure = new AtomicLong(Long.MAX_VALUE);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        try {
+            for (int k = 0; k < threads; k += 1) {
+                workers.add(pool.submit(() -> {
+                    long steps = 0;
+                    for (long n = next.getAndIncrement();
+                         n < games && n < firstFailure.get();
+                         n = next.getAndIncrement()) {
+                        Script game = play(n);
+                        steps += game._steps.size();
+                        if (game._divergence != null) {
+                            firstFailure.accumulateAndGet(n, Math::min);
+                        }
+                    }
+                    _steps.addAndGet(steps);
+                }));
+            }
+            for (ForkJoinTask<?> worker : workers) {
+                worker.join();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        long failed = firstFailure.get();
+        _games = Math.min(games, failed == Long.MAX_VALUE ? games
+                          : failed + 1);
+        return failed == Long.MAX_VALUE ? null : shrink(play(failed));
+    }
+
+    /** Return the number of games checked by the last run. */
+    long games() {
+        return _games;
+    }
+
+    /** Return the total number of steps checked by all runs. */
+    long steps() {
+        return _steps.get();
+    }
+
+    /** Return the script of game number N, which ends at the first
+     *  divergence, if any. */
+    Script play(long n) {
+        Random random = new Random(_seed ^ (n * SEED_MIX));
+        String start = random.nextInt(RANDOM_START_ODDS) == 0
+            ? randomPosition(random) : new Board().encodedBoard();
+        int limit = random.nextInt(LIMIT_ODDS) == 0
+            ? 1 + random.nextInt(MAX_LIMIT) : 0;
+        Script script = new Script(start, limit);
+        Lockstep game = new Lockstep(script);
+        script._divergence = game.check();
+        IntMoveList moves = new IntMoveList(), attacks = new IntMoveList();
+        while (script._divergence == null
+               && script._steps.size() < MAX_STEPS) {
+            Board board = game._board;
+            int step;
+            if (board.moveCount() > 0
+                && (board.winner() != null
+                    || random.nextInt(UNDO_ODDS) == 0)) {
+                step = UNDO;
+            } else if (board.winner() != null) {
+                break;
+            } else {
+                moves.clear();
+                board.legalMoves(board.turn(), moves);
+                if (moves.isEmpty()) {
+                    break;
+                }
+                attacks.clear();
+                for (int k = 0; k < moves.size(); k += 1) {
+                    if (attacks(board, moves.get(k))) {
+                        attacks.add(moves.get(k));
+                    }
+                }
+                IntMoveList choices =
+                    !attacks.isEmpty() && random.nextBoolean() ? attacks
+                    : moves;
+                step = Move.squares(
+                    choices.get(random.nextInt(choices.size())));
+            }
+            script._steps.add(step);
+            script._divergence = game.step(step);
+        }
+        return script;
+    }
+
+    /** Return SCRIPT with as many of its steps removed, and as many of the
+     *  pieces of its starting position, as can be while it still
+     *  diverges.  SCRIPT must diverge. */
+    Script shrink(Script script) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int chunk = Integer.highestOneBit(
+                     Math.max(1, script._steps.size() / 2));
+                 chunk >= 1; chunk /= 2) {
+                int k = 0;
+                while (k + chunk <= script._steps.size()) {
+                    IntMoveList steps = new IntMoveList();
+                    for (int j = 0; j < script._steps.size(); j += 1) {
+                        if (j < k || j >= k + chunk) {
+                            steps.add(script._steps.get(j));
+                        }
+                    }
+                    Script smaller = replay(script._start, script._limit,
+                                            steps);
+                    if (smaller != null) {
+                        script = smaller;
+                        changed = true;
+                    } else {
+                        k += 1;
+                    }
+                }
+            }
+            char[] start = script._start.toCharArray();
+            for (int k = 1; k < start.length; k += 1) {
+                if (start[k] != EMPTY.toString().charAt(0)
+                    && start[k] != KING.toString().charAt(0)) {
+                    char piece = start[k];
+                    start[k] = EMPTY.toString().charAt(0);
+                    Script smaller = replay(new String(start), script._limit,
+                                            script._steps);
+                    if (smaller != null) {
+                        script = smaller;
+                        changed = true;
+                    } else {
+                        start[k] = piece;
+                    }
+                }
+            }
+            if (script._limit != 0) {
+                Script smaller = replay(script._start, 0, script._steps);
+                if (smaller != null) {
+                    script = smaller;
+                    changed = true;
+                }
+            } else {
+                Script smaller = skipAhead(script);
+                if (smaller != null) {
+                    script = smaller;
+                    changed = true;
+                }
+            }
+        }
+        return script;
+    }
+
+    /** Return a script that starts from a position reached by SCRIPT,
+     *  which has no move limit, and takes the rest of its steps, starting
+     *  as late as possible while the boards still diverge, or null if
+     *  there is none.  Such a script loses the record of the earlier
+     *  positions, and so diverges only if the repetitions that they
+     *  allow are not at fault. */
+    private Script skipAhead(Script script) {
+        IntMoveList steps = script._steps;
+        for (int k = steps.size() - 1; k > 0; k -= 1) {
+            Board board = Board.decode(script._start);
+            for (int j = 0; j < k; j += 1) {
+                if (steps.get(j) == UNDO) {
+                    board.undo();
+                } else {
+                    board.makeMove(steps.get(j));
+                }
+            }
+            if (board.winner() != null) {
+                continue;
+            }
+            IntMoveList rest = new IntMoveList();
+            for (int j = k; j < steps.size(); j += 1) {
+                rest.add(steps.get(j));
+            }
+            Script smaller = replay(board.encodedBoard(), 0, rest);
+            if (smaller != null) {
+                return smaller;
+            }
+        }
+        return null;
+    }
+
+    /** Return the script that results from playing STEPS from the
+     *  position START with move limit LIMIT (0 for none), ending at the
+     *  first divergence, or null if the boards do not diverge or STEPS
+     *  are not all legal. */
+    Script replay(String start, int limit, IntMoveList steps) {
+        Script script = new Script(start, limit);
+        Lockstep game = new Lockstep(script);
+        script._divergence = game.check();
+        for (int k = 0; k < steps.size() && script._divergence == null;
+             k += 1) {
+            int step = steps.get(k);
+            if (step == UNDO ? game._board.moveCount() == 0
+                : !isGenerated(game._board, step)) {
+                return null;
+            }
+            script._steps.add(step);
+            script._divergence = game.step(step);
+        }
+        return script._divergence == null ? null : script;
+    }
+
+    /** Return true iff the packed move MOVE is among those generated by
+     *  BOARD.legalMoves for the side to move, and the game is not over. */
+    private static boolean isGenerated(Board board, int move) {
+        if (board.winner() != null) {
+            return false;
+        }
+        IntMoveList moves = new IntMoveList();
+        board.legalMoves(board.turn(), moves);
+        for (int k = 0; k < moves.size(); k += 1) {
+            if (Move.squares(moves.get(k)) == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff the packed move MOVE on BOARD ends next to an
+     *  enemy piece. */
+    private static boolean attacks(Board board, int move) {
+        Square to = sq(Move.to(move));
+        Piece enemy = board.turn().opponent();
+        for (int dir = 0; dir < 4; dir += 1) {
+            Square near = to.rookMove(dir, 1);
+            if (near != null && board.get(near).side() == enemy) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return a random position, in the format of Board.encodedBoard(),
+     *  using RANDOM. */
+    private static String randomPosition(Random random) {
+        char[] position = new char[NUM_SQUARES + 1];
+        Arrays.fill(position, EMPTY.toString().charAt(0));
+        position[0] = (random.nextBoolean() ? WHITE : BLACK)
+            .toString().charAt(0);
+        Square king;
+        if (random.nextInt(KING_ANYWHERE_ODDS) == 0) {
+            king = sq(random.nextInt(NUM_SQUARES));
+        } else {
+            int k = random.nextInt(SURROUNDING_THRONE.size() + 1);
+            king = k == 0 ? THRONE : SURROUNDING_THRONE.get(k - 1);
+        }
+        position[king.index() + 1] = KING.toString().charAt(0);
+        place(position, BLACK, 1 + random.nextInt(MAX_BLACK), random);
+        place(position, WHITE, random.nextInt(MAX_WHITE + 1), random);
+        return new String(position);
+    }
+
+    /** Place COUNT pieces PIECE on random empty squares of POSITION, in
+     *  the format of Board.encodedBoard(), other than the throne, using
+     *  RANDOM. */
+    private static void place(char[] position, Piece piece, int count,
+                              Random random) {
+        char empty = EMPTY.toString().charAt(0);
+        for (int k = 0; k < count; k += 1) {
+            int i;
+            do {
+                i = random.nextInt(NUM_SQUARES);
+            } while (position[i + 1] != empty || sq(i) == THRONE);
+            position[i + 1] = piece.toString().charAt(0);
+        }
+    }
+
+    /** The steps of a game and its outcome. */
+    static final class Script {
+
+        /** A script starting from the position START (in the format of
+         *  Board.encodedBoard()) with move limit LIMIT (0 for none), with
+         *  no steps yet. */
+        Script(String start, int limit) {
+            _start = start;
+            _limit = limit;
+        }
+
+        /** Return the starting position. */
+        String start() {
+            return _start;
+        }
+
+        /** Return the move limit, or 0 if there is none. */
+        int limit() {
+            return _limit;
+        }
+
+        /** Return the steps: packed moves, or UNDO. */
+        IntMoveList steps() {
+            return _steps;
+        }
+
+        /** Return a description of the difference between the boards
+         *  after the last step, or null if there was none. */
+        String divergence() {
+            return _divergence;
+        }
+
+        /** Return the script as text: the starting position and move
+         *  limit, the steps, and the divergence. */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append("start ").append(_start);
+            if (_limit != 0) {
+                result.append(" limit ").append(_limit);
+            }
+            result.append(System.lineSeparator()).append("steps");
+            for (int k = 0; k < _steps.size(); k += 1) {
+                int step = _steps.get(k);
+                result.append(' ').append(step == UNDO ? "undo"
+                                          : Move.unpack(step));
+            }
+            if (_divergence != null) {
+                result.append(System.lineSeparator())
+                    .append("diverged: ").append(_divergence);
+            }
+            return result.toString();
+        }
+
+        /** The starting position. */
+        private final String _start;
+        /** The move limit, or 0. */
+        private final int _limit;
+        /** The steps played. */
+        private final IntMoveList _steps = new IntMoveList();
+        /** Description of the divergence after the last step, or null. */
+        private String _divergence;
+    }
+
+    /** A Board and a reference board played in lockstep. */
+    private final class Lockstep {
+
+        /** Boards set up as at the start of SCRIPT. */
+        Lockstep(Script script) {
+            _board = Board.decode(script._start);
+            _ref = _reference.apply(script._start);
+            if (script._limit != 0) {
+                _board.setMoveLimit(script._limit);
+                _ref.setMoveLimit(script._limit);
+            }
+        }
+
+        /** Take STEP on both boards and return a description of how they
+         *  then differ, or null if they do not. */
+        String step(int step) {
+            try {
+                if (step == UNDO) {
+                    _board.undo();
+                    _ref.undo();
+                } else {
+                    _board.makeMove(step);
+                    _ref.makeMove(step);
+                }
+            } catch (RuntimeException excp) {
+                return "exception: " + excp;
+            }
+            return check();
+        }
+
+        /** Return a description of how the boards differ, or null if they
+         *  do not. */
+        String check() {
+            try {
+                if (!_board.encodedBoard().equals(_ref.encodedBoard())) {
+                    return String.format("position %s, reference %s",
+                                         _board.encodedBoard(),
+                                         _ref.encodedBoard());
+                } else if (_board.moveCount() != _ref.moveCount()) {
+                    return String.format("move count %d, reference %d",
+                                         _board.moveCount(),
+                                         _ref.moveCount());
+                } else if (_board.winner() != _ref.winner()) {
+                    return String.format("winner %s, reference %s",
+                                         _board.winner(), _ref.winner());
+                } else if (_board.repeatedPosition()
+                           != _ref.repeatedPosition()) {
+                    return String.format("repeated %b, reference %b",
+                                         _board.repeatedPosition(),
+                                         _ref.repeatedPosition());
+                }
+                for (Piece side : new Piece[] { WHITE, BLACK }) {
+                    IntMoveList moves = new IntMoveList();
+                    _board.legalMoves(side, moves);
+                    String diff = difference(moves, _ref.legalMoves(side));
+                    if (diff != null) {
+                        return String.format("moves of %s: %s", side, diff);
+                    }
+                }
+                return null;
+            } catch (RuntimeException excp) {
+                return "exception: " + excp;
+            }
+        }
+
+        /** Return a description of the difference between the sets of
+         *  packed moves MOVES and REF, ignoring order and flags, or null
+         *  if they are equal. */
+        private String difference(IntMoveList moves, IntMoveList ref) {
+            int[] mine = sorted(moves), theirs = sorted(ref);
+            if (Arrays.equals(mine, theirs)) {
+                return null;
+            }
+            return String.format("only in board [%s], only in reference"
+                                 + " [%s]", missing(mine, theirs),
+                                 missing(theirs, mine));
+        }
+
+        /** Return the moves of MOVES that are not in OTHERS, both sorted,
+         *  as text. */
+        private String missing(int[] moves, int[] others) {
+            StringBuilder result = new StringBuilder();
+            for (int move : moves) {
+                if (Arrays.binarySearch(others, move) < 0) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append(Move.unpack(move));
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return the packed moves of MOVES, without flags, in
+         *  increasing order. */
+        private int[] sorted(IntMoveList moves) {
+            int[] result = new int[moves.size()];
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = Move.squares(moves.get(k));
+            }
+            Arrays.sort(result);
+            return result;
+        }
+
+        /** The board under test. */
+        private final Board _board;
+        /** The reference board. */
+        private final ReferenceBoard _ref;
+    }
+
+    /** Seed of the games. */
+    private final long _seed;
+    /** Source of reference boards. */
+    private final Function<String, ReferenceBoard> _reference;
+    /** Number of games checked by the last run. */
+    private long _games;
+    /** Number of steps checked by all runs. */
+    private final AtomicLong _steps = new AtomicLong();
+}
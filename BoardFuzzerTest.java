@@ -0,0 +1,64 @@
+package tablut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of the differential testing of Board against ReferenceBoard.
+ *  @author Philipp
+ */
+public class BoardFuzzerTest {
+
+    /** Board and ReferenceBoard agree on a sample of random games. */
+    @Test
+    public void noDivergence() {
+        BoardFuzzer fuzzer = new BoardFuzzer(SEED);
+        BoardFuzzer.Script divergence = fuzzer.run(GAMES, THREADS);
+        assertNull(String.valueOf(divergence), divergence);
+        assertEquals(GAMES, fuzzer.games());
+        assertTrue(fuzzer.steps() >= GAMES);
+    }
+
+    /** A reference board that captures the king like any other piece is
+     *  caught, and its divergence is shrunk to a single capture, whatever
+     *  the number of threads. */
+    @Test
+    public void shrinksDivergence() {
+        BoardFuzzer fuzzer = new BoardFuzzer(SEED, KingCapturedByTwo::new);
+        BoardFuzzer.Script divergence = fuzzer.run(GAMES, THREADS);
+        assertNotNull(divergence);
+        assertEquals(1, divergence.steps().size());
+        assertTrue(divergence.divergence().startsWith("position"));
+        assertNotNull(fuzzer.replay(divergence.start(), divergence.limit(),
+                                    divergence.steps()));
+        assertEquals(divergence.toString(),
+                     new BoardFuzzer(SEED, KingCapturedByTwo::new)
+                     .run(GAMES, 1).toString());
+    }
+
+    /** A reference board that ignores the rule that guards the king on
+     *  and next to the throne. */
+    private static class KingCapturedByTwo extends ReferenceBoard {
+
+        /** A board holding the position ENCODED. */
+        KingCapturedByTwo(String encoded) {
+            super(encoded);
+        }
+
+        @Override
+        boolean isCaptured(Square victim, Square partner, Piece mover) {
+            if (get(victim) == KING && mover == BLACK) {
+                return isHostile(partner, mover);
+            }
+            return super.isCaptured(victim, partner, mover);
+        }
+    }
+
+    /** Seed of the games. */
+    private static final long SEED = 1;
+    /** Number of games played. */
+    private static final long GAMES = 200;
+    /** Number of threads. */
+    private static final int THREADS = 2;
+}
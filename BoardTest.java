@@ -0,0 +1,135 @@
+package tablut;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of making and undoing moves.
+ *  @author Philipp
+ */
+public class BoardTest {
+
+    /** Undoing a move restores the position, the piece sets and the
+     *  position key, including after captures. */
+    @Test
+    public void undoRestores() {
+        Random rand = new Random(SEED);
+        for (int game = 0; game < GAMES; game += 1) {
+            Board b = new Board();
+            while (b.winner() == null) {
+                String before = b.encodedBoard();
+                long key = b.key();
+                HashSet<Square> white = new HashSet<>(b.pieceLocations(WHITE));
+                HashSet<Square> black = new HashSet<>(b.pieceLocations(BLACK));
+                List<Move> moves = b.legalMoves(b.turn());
+                Move mv = moves.get(rand.nextInt(moves.size()));
+                b.makeMove(mv);
+                b.undo();
+                assertEquals(before, b.encodedBoard());
+                assertEquals(key, b.key());
+                assertEquals(white, b.pieceLocations(WHITE));
+                assertEquals(black, b.pieceLocations(BLACK));
+                b.makeMove(mv);
+            }
+        }
+    }
+
+    /** Undoing a move that repeats a position does not forget the
+     *  earlier occurrence of that position. */
+    @Test
+    public void repetitionSurvivesUndo() {
+        Board b = new Board();
+        for (String mv : new String[] { "d1-c", "d5-7", "c1-d" }) {
+            b.makeMove(Move.mv(mv));
+        }
+        b.makeMove(Move.mv("d7-5"));
+        assertTrue(b.repeatedPosition());
+        assertEquals(BLACK, b.winner());
+        b.undo();
+        assertNull(b.winner());
+        b.makeMove(Move.mv("d7-5"));
+        assertTrue(b.repeatedPosition());
+    }
+
+    /** A copy has the position, history and move limit of its model,
+     *  and is independent of it. */
+    @Test
+    public void copyIsComplete() {
+        Board b = new Board();
+        b.setMoveLimit(LIMIT);
+        for (String mv : new String[] { "d1-c", "d5-7", "c1-d" }) {
+            b.makeMove(Move.mv(mv));
+        }
+        Board c = new Board(b);
+        assertEquals(LIMIT, c.moveLimit());
+        assertEquals(b.encodedBoard(), c.encodedBoard());
+        assertEquals(b.key(), c.key());
+        assertEquals(b.moveCount(), c.moveCount());
+        c.makeMove(Move.mv("d7-5"));
+        assertTrue(c.repeatedPosition());
+        assertFalse(b.repeatedPosition());
+        c.undo();
+        assertEquals(b.encodedBoard(), c.encodedBoard());
+        assertEquals(3, b.moveCount());
+        Board d = new Board();
+        d.copy(c);
+        assertEquals(c.encodedBoard(), d.encodedBoard());
+        assertEquals(LIMIT, d.moveLimit());
+    }
+
+    /** Decoding the encodedBoard() of a position reproduces it, with
+     *  the same side to move, piece sets and key. */
+    @Test
+    public void decodeRoundTrip() {
+        Random rand = new Random(SEED);
+        for (int game = 0; game < GAMES; game += 1) {
+            Board b = new Board();
+            while (b.winner() == null) {
+                Board d = Board.decode(b.encodedBoard().toLowerCase());
+                assertEquals(b.encodedBoard(), d.encodedBoard());
+                assertEquals(b.turn(), d.turn());
+                assertEquals(b.key(), d.key());
+                assertEquals(b.kingPosition(), d.kingPosition());
+                assertEquals(b.pieceLocations(WHITE), d.pieceLocations(WHITE));
+                assertEquals(b.pieceLocations(BLACK), d.pieceLocations(BLACK));
+                assertEquals(0, d.moveCount());
+                List<Move> moves = b.legalMoves(b.turn());
+                b.makeMove(moves.get(rand.nextInt(moves.size())));
+            }
+        }
+    }
+
+    /** Malformed boards are rejected and leave the board unchanged. */
+    @Test
+    public void decodeRejects() {
+        Board b = new Board();
+        String good = b.encodedBoard();
+        String[] bad = {
+            good.substring(1), "K" + good.substring(1),
+            good.replace('K', '-'), good.replace('K', 'x'),
+            good.replaceFirst("W", "K")
+        };
+        for (String s : bad) {
+            try {
+                b.setPosition(s);
+                fail("accepted " + s);
+            } catch (IllegalArgumentException excp) {
+                assertEquals(good, b.encodedBoard());
+            }
+        }
+    }
+
+    /** Seed of the random games. */
+    private static final long SEED = 37;
+
+    /** Number of random games. */
+    private static final int GAMES = 20;
+
+    /** Move limit of the board copied. */
+    private static final int LIMIT = 10;
+}
@@ -3,6 +3,7 @@ package tablut;
 import ucb.gui2.Pad;
 
 import java.util.concurrent.ArrayBlockingQueue;
+import javax.swing.Timer;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -12,7 +13,11 @@ import java.awt.event.MouseEvent;
 import static tablut.Piece.*;
 import static tablut.Square.sq;
 
-/** A widget that displays a Tablut game.
+/** A widget that displays a Tablut game.  The board shown is a snapshot
+ *  published by update, which is never modified afterwards, so that
+ *  painting needs no locks and never waits for the game.  While an AI
+ *  searches, an overlay shows its progress, repainted at most every
+ *  OVERLAY_MILLIS milliseconds however often progress is reported.
  *  @author Philipp
  */
 class BoardWidget extends Pad {
@@ -48,6 +53,25 @@ class BoardWidget extends Pad {
     /** The font for labeling rows and columns. */
     static final Font ROW_COL_FONT = new Font("SanSerif", Font.PLAIN, 10);
 
+    /** The font of the search overlay. */
+    static final Font OVERLAY_FONT = new Font("SanSerif", Font.PLAIN, 11);
+    /** Colors of the search overlay and its text. */
+    static final Color
+        OVERLAY_COLOR = new Color(0, 0, 0, 160),
+        OVERLAY_TEXT_COLOR = Color.white;
+    /** Height of the search overlay in pixels. */
+    static final int OVERLAY_HEIGHT = 16;
+
+    /** Interval between repaints of the search overlay, in
+     *  milliseconds. */
+    static final int OVERLAY_MILLIS = 250;
+
+    /** Nodes per kilonode (kN). */
+    private static final long NODES_PER_KN = 1000;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
     /** Squares adjacent to the throne. */
     static final Square[] ADJACENT_THRONE = {
         Board.NTHRONE, Board.ETHRONE, Board.STHRONE, Board.WTHRONE
@@ -60,6 +84,7 @@ class BoardWidget extends Pad {
         setMouseHandler("click", this::mouseClicked);
         setPreferredSize(BOARD_SIDE, BOARD_SIDE);
         _acceptingMoves = false;
+        _overlayTimer = new Timer(OVERLAY_MILLIS, e -> repaint());
     }
 
     /** Draw the bare board G.  */
@@ -97,14 +122,17 @@ class BoardWidget extends Pad {
     }
 
     @Override
-    public synchronized void paintComponent(Graphics2D g) {
+    public void paintComponent(Graphics2D g) {
+        Board board = _board;
         drawGrid(g);
-        Square.SQUARE_LIST.iterator().forEachRemaining(s -> drawPiece(g, s));
+        Square.SQUARE_LIST.iterator()
+            .forEachRemaining(s -> drawPiece(g, board, s));
+        drawOverlay(g);
     }
 
-    /** Draw the contents of S on G. */
-    private void drawPiece(Graphics2D g, Square s) {
-        Piece p = _board.get(s);
+    /** Draw the contents of S on BOARD on G. */
+    private void drawPiece(Graphics2D g, Board board, Square s) {
+        Piece p = board.get(s);
         if (p == EMPTY) {
             return;
         }
@@ -121,6 +149,27 @@ class BoardWidget extends Pad {
         }
     }
 
+    /** Draw the progress of the current search, if any, on G. */
+    private void drawOverlay(Graphics2D g) {
+        Progress progress = _progress;
+        if (progress == null) {
+            return;
+        }
+        String text = String.format("Thinking %.1f s",
+                                     (System.nanoTime() - progress._start)
+                                     / NANOS_PER_SECOND);
+        if (progress._best != null) {
+            text += String.format("  depth %d  %s  %d kN/s",
+                                  progress._depth, progress._best,
+                                  progress._nps / NODES_PER_KN);
+        }
+        g.setColor(OVERLAY_COLOR);
+        g.fillRect(cx(0), cy(SIZE - 1), SIZE * SQUARE_SIDE, OVERLAY_HEIGHT);
+        g.setColor(OVERLAY_TEXT_COLOR);
+        g.setFont(OVERLAY_FONT);
+        g.drawString(text, cx(0) + 4, cy(SIZE - 1) + OVERLAY_HEIGHT - 4);
+    }
+
     /** Handle a click on S. */
     private void click(Square s) {
         if (_clickedSquare == null) {
@@ -130,7 +179,7 @@ class BoardWidget extends Pad {
         } else {
             Move m = Move.mv(_clickedSquare, s);
             _clickedSquare = null;
-            if (_board.isLegal(m)) {
+            if (m != null && _board.isLegal(m)) {
                 _commands.add(m.toString());
             }
         }
@@ -138,7 +187,7 @@ class BoardWidget extends Pad {
     }
 
     /** Handle mouse click event E. */
-    private synchronized void mouseClicked(String unused, MouseEvent e) {
+    private void mouseClicked(String unused, MouseEvent e) {
         int xpos = e.getX(), ypos = e.getY();
         int x = (xpos - OFFSET - MARGIN) / SQUARE_SIDE,
             y = (OFFSET - ypos) / SQUARE_SIDE + SIZE - 1;
@@ -148,12 +197,31 @@ class BoardWidget extends Pad {
         }
     }
 
-    /** Revise the displayed board according to BOARD. */
-    synchronized void update(Board board) {
-        _board.copy(board);
+    /** Revise the displayed board according to BOARD, and remove any
+     *  search overlay. */
+    void update(Board board) {
+        _board = new Board(board);
+        _progress = null;
+        _overlayTimer.stop();
         repaint();
     }
 
+    /** Show the overlay for a search that has just started. */
+    void searchStarted() {
+        _progress = new Progress(System.nanoTime(), null, 0, 0);
+        _overlayTimer.start();
+    }
+
+    /** Show in the overlay that the search in progress has found BEST
+     *  as the best move in a search of DEPTH plies, at NPS nodes per
+     *  second.  The overlay is repainted by the timer. */
+    void searchProgress(Move best, int depth, long nps) {
+        Progress progress = _progress;
+        if (progress != null) {
+            _progress = new Progress(progress._start, best, depth, nps);
+        }
+    }
+
     /** Turn on move collection iff COLLECTING, and clear any current
      *  partial selection.  When move collection is off, ignore clicks on
      *  the board. */
@@ -186,13 +254,44 @@ class BoardWidget extends Pad {
         return cy(s.row());
     }
 
+    /** The progress of a search, as shown by the overlay.  Progress
+     *  objects are immutable. */
+    private static final class Progress {
+
+        /** The progress of a search started at time START (as for
+         *  System.nanoTime) that has found BEST (or null if none yet)
+         *  in a search of DEPTH plies at NPS nodes per second. */
+        Progress(long start, Move best, int depth, long nps) {
+            _start = start;
+            _best = best;
+            _depth = depth;
+            _nps = nps;
+        }
+
+        /** Starting time of the search. */
+        private final long _start;
+        /** Best move so far, or null. */
+        private final Move _best;
+        /** Depth of the search that found _best. */
+        private final int _depth;
+        /** Speed of the search in nodes per second. */
+        private final long _nps;
+    }
+
     /** Queue on which to post move commands (from mouse clicks). */
     private ArrayBlockingQueue<String> _commands;
-    /** Board being displayed. */
-    private final Board _board = new Board();
+    /** Board being displayed: a snapshot that is replaced, but never
+     *  modified. */
+    private volatile Board _board = new Board();
+
+    /** Progress of the current search, or null if none. */
+    private volatile Progress _progress;
+
+    /** Timer that repaints the search overlay. */
+    private final Timer _overlayTimer;
 
     /** True iff accepting moves from user. */
-    private boolean _acceptingMoves;
+    private volatile boolean _acceptingMoves;
 
     /** Square which has just been clicked on by user. */
     private Square _clickedSquare;
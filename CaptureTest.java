@@ -0,0 +1,172 @@
+package tablut;
+
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Board.SURROUNDING_THRONE;
+import static tablut.Board.THRONE;
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+
+/** Differential tests of Board.tryCapture against the original,
+ *  list-based capture rules.
+ *  @author Philipp
+ */
+public class CaptureTest {
+
+    /** Number of random positions to compare. */
+    private static final int POSITIONS = 20000;
+
+    /** A king on or next to the throne is captured only when surrounded;
+     *  elsewhere it is captured like any other piece. */
+    @Test
+    public void kingCaptures() {
+        Board b = position("Ke5", "Bd5", "Bf5", "Be6", "Be4");
+        assertEquals(1 << 2, b.tryCapture(sq("e6")));
+        b = position("Ke5", "Bd5", "Bf5", "Be6");
+        assertEquals(0, b.tryCapture(sq("e6")));
+        b = position("Ke6", "Bd6", "Bf6", "Be7");
+        assertEquals(1 << 2, b.tryCapture(sq("e7")));
+        b = position("Ke7", "Be8");
+        assertEquals(0, b.tryCapture(sq("e8")));
+        b = position("Ke7", "Be8", "Be6");
+        assertEquals(1 << 2, b.tryCapture(sq("e8")));
+    }
+
+    /** The empty throne is hostile to both sides; the occupied throne is
+     *  hostile to White when three black pieces surround it. */
+    @Test
+    public void throneHostility() {
+        Board b = position("Kb2", "We6", "Be7");
+        assertEquals(1 << 2, b.tryCapture(sq("e7")));
+        b = position("Ke5", "Wd5", "Bc5");
+        assertEquals(0, b.tryCapture(sq("c5")));
+        b = position("Ke5", "Wd5", "Bc5", "Be6", "Bf5");
+        assertEquals(0, b.tryCapture(sq("c5")));
+        b = position("Ke5", "Wd5", "Bc5", "Be6", "Be4", "Bf5");
+        assertEquals(1 << 1, b.tryCapture(sq("c5")));
+    }
+
+    /** Captures agree with the original rules in random positions. */
+    @Test
+    public void randomPositions() {
+        Random rand = new Random(SEED);
+        for (int n = 0; n < POSITIONS; n += 1) {
+            Board b = randomPosition(rand);
+            for (Square s : Square.SQUARE_LIST) {
+                if (b.get(s) != EMPTY
+                    && referenceCaptures(b, s) != b.tryCapture(s)) {
+                    fail("captures from " + s + " differ in\n" + b);
+                }
+            }
+        }
+    }
+
+    /** Return a board holding the pieces in SPECS, each a piece letter
+     *  (K, W or B) followed by a square. */
+    private static Board position(String... specs) {
+        Board b = new Board();
+        for (Square s : Square.SQUARE_LIST) {
+            b.put(EMPTY, s);
+        }
+        for (String spec : specs) {
+            Piece p = spec.charAt(0) == 'K' ? KING
+                : spec.charAt(0) == 'W' ? WHITE : BLACK;
+            b.put(p, sq(spec.substring(1)));
+        }
+        return b;
+    }
+
+    /** Return a random position, chosen by RAND, with the king off the
+     *  edge and, usually, on or near the throne. */
+    private static Board randomPosition(Random rand) {
+        Board b = position();
+        for (Square s : Square.SQUARE_LIST) {
+            int r = rand.nextInt(CHOICES);
+            if (s != THRONE && r < 2) {
+                b.put(r == 0 ? WHITE : BLACK, s);
+            }
+        }
+        Square king;
+        if (rand.nextBoolean()) {
+            king = rand.nextBoolean() ? THRONE
+                : SURROUNDING_THRONE.get(rand.nextInt(4));
+        } else {
+            do {
+                king = sq(rand.nextInt(Square.NUM_SQUARES));
+            } while (king.isEdge());
+        }
+        b.put(KING, king);
+        return b;
+    }
+
+    /** Return the captures made by the piece on SQ in B, as by
+     *  Board.tryCapture, computed as in the original implementation. */
+    private static int referenceCaptures(Board b, Square sq) {
+        int result = 0;
+        for (int i = 0; i < 4; i += 1) {
+            Piece side = b.get(sq).side();
+            Square sq2 = sq.rookMove(i, 2);
+            boolean add = false;
+            if (sq2 != null) {
+                Square between = sq.between(sq2);
+                if (b.get(between).side() == side.opponent()) {
+                    if (b.get(between) != KING && isAllied(b, side, sq2)) {
+                        add = true;
+                    } else if (b.get(between) == KING) {
+                        if (THRONE != between
+                            && !SURROUNDING_THRONE.contains(between)
+                            && isAllied(b, side, sq2)) {
+                            add = true;
+                        } else {
+                            int count = 0;
+                            for (int j = 0; j < 4; j += 1) {
+                                if (isAllied(b, side,
+                                             between.rookMove(j, 1))) {
+                                    count += 1;
+                                }
+                            }
+                            add = count > 3;
+                        }
+                    }
+                }
+            }
+            if (add) {
+                result |= 1 << i;
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if square SQ of B is allied to side P, as in the
+     *  original implementation. */
+    private static boolean isAllied(Board b, Piece p, Square sq) {
+        Piece side = p.side();
+        if (sq == null) {
+            return false;
+        } else if (b.get(sq).side() == side) {
+            return true;
+        } else if (sq == THRONE && b.get(THRONE) == EMPTY) {
+            return true;
+        } else if (side == BLACK && sq == THRONE
+                   && b.get(THRONE) != EMPTY) {
+            int count = 0;
+            for (Square surr : SURROUNDING_THRONE) {
+                if (b.get(surr) == BLACK) {
+                    count += 1;
+                }
+            }
+            return count >= 3;
+        }
+        return false;
+    }
+
+    /** Seed of the random positions. */
+    private static final long SEED = 61;
+
+    /** Each square is white with probability 1/CHOICES, black with the
+     *  same probability, and otherwise empty. */
+    private static final int CHOICES = 5;
+}
@@ -0,0 +1,59 @@
+package tablut;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** A Command is pair (<pattern>, <processor>), where <pattern> is a
+ *  Matcher that matches instances of a particular command, and
+ *  <processor> is a functional object whose .accept method takes a
+ *  successfully matched Matcher and performs some operation.  Each
+ *  Command has its own Matcher, so a table of Commands must be used by
+ *  one thread at a time.
+ *  @author Philipp
+ */
+final class Command {
+
+    /** A Pattern matching comments. */
+    private static final Pattern COMMENT = Pattern.compile("#.*");
+
+    /** A new Command that matches PATN (a regular expression) and uses
+     *  PROCESSOR to process commands that match the pattern. */
+    Command(String patn, Consumer<Matcher> processor) {
+        _matcher = Pattern.compile(patn).matcher("");
+        _processor = processor;
+    }
+
+    /** Return CMND without any comment and surrounding whitespace, in
+     *  lower case, as expected by execute. */
+    static String normalize(String cmnd) {
+        return COMMENT.matcher(cmnd).replaceFirst("").trim().toLowerCase();
+    }
+
+    /** Return a table of the commands in FIRST followed by those in
+     *  REST, for use with execute. */
+    static Command[] join(Command[] first, Command[] rest) {
+        Command[] result = new Command[first.length + rest.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(rest, 0, result, first.length, rest.length);
+        return result;
+    }
+
+    /** Process CMND, a normalized command, with the first of COMMANDS
+     *  that matches it and return true, or return false if none does. */
+    static boolean execute(Command[] commands, String cmnd) {
+        for (Command parser : commands) {
+            parser._matcher.reset(cmnd);
+            if (parser._matcher.matches()) {
+                parser._processor.accept(parser._matcher);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A Matcher matching my pattern. */
+    private final Matcher _matcher;
+    /** The function object that implements my command. */
+    private final Consumer<Matcher> _processor;
+}
@@ -1,14 +1,16 @@
 package tablut;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
-import java.util.function.Consumer;
 
 import static tablut.Utils.*;
-import static tablut.Square.*;
 import static tablut.Piece.*;
 
 /** The input/output and GUI controller for play of Tablut.
@@ -21,16 +23,16 @@ final class Controller {
      *  (see the Player.create method) and AUTOPLAYERTEMPLATE
      *  as an exemplar for automated players.  Reports
      *  board changes to VIEW at appropriate points.  Uses REPORTER
-     *  to report moves, wins, and errors to user. If LOGFILE is
+     *  to report moves, wins, and errors to user. If JOURNAL is
      *  non-null, copies all commands to it. If STRICT, exits the
      *  program with non-zero code on receiving an erroneous move from a
      *  player. */
-    Controller(View view, PrintStream logFile, Reporter reporter,
+    Controller(View view, Journal journal, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
         _view = view;
         _playing = false;
-        _logFile = logFile;
+        _journal = journal;
         _input = new Scanner(System.in);
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
@@ -39,17 +41,40 @@ final class Controller {
         _black = _manualPlayerTemplate.create(BLACK, this);
         _reporter = reporter;
         _strict = strict;
+        _seed = _randGen.nextLong();
+        _commands = Command.join(_controllerCommands, new GameCommands(
+            _board, new GameCommands.Listener() {
+                @Override
+                public void positionChanging() {
+                    _stalled = false;
+                }
+
+                @Override
+                public void moved(Move move) {
+                    if (_board.winner() != null) {
+                        _view.update(Controller.this);
+                        _reporter.reportNote("%s wins.",
+                                             _board.winner().toName());
+                        writeRecord();
+                    }
+                }
+            }).commands());
     }
 
-    /** Play Tablut. */
+    /** Play Tablut.  A side left without a legal move (as after a
+     *  "setup") loses, and is not asked for one. */
     void play() throws InterruptedException {
         _playing = true;
-        _winner = null;
-        _board.init();
         while (_playing) {
             _view.update(this);
             String command;
-            if (_winner == null) {
+            if (_board.winner() == null && !_stalled
+                && !_board.hasMove(_board.turn())) {
+                _stalled = true;
+                _reporter.reportNote("%s wins.",
+                                     _board.turn().opponent().toName());
+            }
+            if (_board.winner() == null && !_stalled) {
                 if (_board.turn() == WHITE) {
                     command = _white.myMove();
                 } else {
@@ -70,8 +95,36 @@ final class Controller {
                 }
             }
         }
-        if (_logFile != null) {
-            _logFile.close();
+        if (_journal != null) {
+            try {
+                _journal.close();
+            } catch (IOException excp) {
+                reportError("Could not write journal: %s", excp.getMessage());
+            }
+        }
+        if (_records != null) {
+            try {
+                _records.close();
+            } catch (IOException excp) {
+                reportError("Could not write game record: %s",
+                            excp.getMessage());
+            }
+        }
+        if (_positions != null) {
+            try {
+                _positions.close();
+            } catch (IOException excp) {
+                /* Ignore IOException. */
+            }
+        }
+    }
+
+    /** Continue the game from the position of BOARD, rather than the
+     *  initial position.  Must be called before play. */
+    void restore(Board board) {
+        _board.copy(board);
+        if (board.moveLimit() != Integer.MAX_VALUE) {
+            _board.setMoveLimit(board.moveLimit());
         }
     }
 
@@ -94,6 +147,13 @@ final class Controller {
      *  Initially, the PRNG is randomly seeded. */
     void setSeed(long seed) {
         _randGen.setSeed(seed);
+        _seed = seed;
+    }
+
+    /** Return the current game seed, as last set by setSeed.  AIs mix it
+     *  into position hashes wherever they need reproducible noise. */
+    long seed() {
+        return _seed;
     }
 
     /** Return the next line of input, or null if there is no more. First
@@ -104,6 +164,18 @@ final class Controller {
             System.out.print("> ");
             System.out.flush();
         }
+        if (_lines != null) {
+            try {
+                String line = _lines.take();
+                if (line == END_OF_INPUT) {
+                    _lines.add(END_OF_INPUT);
+                    return null;
+                }
+                return line;
+            } catch (InterruptedException excp) {
+                return null;
+            }
+        }
         if (_input.hasNextLine()) {
             return _input.nextLine().trim();
         } else {
@@ -111,6 +183,74 @@ final class Controller {
         }
     }
 
+    /** Start reading the standard input on a separate thread, so that
+     *  "undo", "new" or "quit" typed while an AI is searching interrupts
+     *  the search.  Intended for interactive use only: lines of a script
+     *  would be read ahead and could interrupt searches that would
+     *  otherwise have completed. */
+    void readInputAsynchronously() {
+        _lines = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(this::readInput, "input");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** Copy lines of the standard input to _lines until it ends, diverting
+     *  interrupting commands received during a search. */
+    private void readInput() {
+        while (_input.hasNextLine()) {
+            String line = _input.nextLine().trim();
+            if (!INTERRUPT.matcher(line).matches()
+                || !interruptSearch(line)) {
+                _lines.add(line);
+            }
+        }
+        _lines.add(END_OF_INPUT);
+    }
+
+    /** Record that a search is being run on behalf of one of my players
+     *  or commands, and that STOPPER stops it. */
+    void searchStarted(Runnable stopper) {
+        synchronized (this) {
+            _activeSearch = stopper;
+            _interruption = null;
+        }
+        _view.searchStarted();
+    }
+
+    /** Report to my view that the current search has completed LINE,
+     *  with statistics so far STATS. */
+    void reportProgress(Variation line, SearchStats stats) {
+        _view.searchProgress(line.move(), line.depth(), stats.nps());
+    }
+
+    /** Record the end of the current search.  Return the command that
+     *  interrupted it, which the searching player should return in place
+     *  of a move, or null if it was not interrupted. */
+    synchronized String searchFinished() {
+        String result = _interruption;
+        _activeSearch = null;
+        _interruption = null;
+        return result;
+    }
+
+    /** If a search is in progress, stop it and arrange for COMMAND to be
+     *  executed in place of the move being searched for, returning true.
+     *  Otherwise, return false.  May be called from any thread. */
+    synchronized boolean interruptSearch(String command) {
+        if (_activeSearch == null || _interruption != null) {
+            return false;
+        }
+        _interruption = command;
+        _activeSearch.run();
+        return true;
+    }
+
+    /** Return the bounds to use for AI searches. */
+    SearchLimits searchLimits() {
+        return _limits;
+    }
+
     /** Return true iff white is a manual player. */
     boolean manualWhite() {
         return _white.isManual();
@@ -136,79 +276,101 @@ final class Controller {
         _reporter.reportMove(move);
     }
 
-    /** Print a comment in the log.  The arguments FORMAT and ARGS are
-     *  as for String.format. */
-    void logComment(String format, Object... args) {
-        if (_logFile != null) {
-            _logFile.printf("# " + format + "%n", args);
-            _logFile.flush();
-        }
+    /** Record STATS as the statistics of the search that found MOVE,
+     *  and copy them to the log if statistics logging is on. */
+    void reportStats(Move move, SearchStats stats) {
+        reportStats(move, stats.toString());
+    }
+
+    /** Record that MOVE was taken from the root cache as RESULT, as for
+     *  reportStats. */
+    void reportStats(Move move, RootCache.Result result) {
+        reportStats(move, result.toString());
     }
 
-    /** A Command is pair (<pattern>, <processor>), where <pattern> is a
-     *  Matcher that matches instances of a particular command, and
-     *  <processor> is a functional object whose .accept method takes a
-     *  successfully matched Matcher and performs some operation. */
-    private static class Command {
-        /** A new Command that matches PATN (a regular expression) and uses
-         *  PROCESSOR to process commands that match the pattern. */
-        Command(String patn, Consumer<Matcher> processor) {
-            _matcher = Pattern.compile(patn).matcher("");
-            _processor = processor;
+    /** Record STATS, a description of how MOVE was found, as the
+     *  statistics of the last search, and copy them to the log if
+     *  statistics logging is on. */
+    private void reportStats(Move move, String stats) {
+        _lastStats = String.format("%s: %s", move, stats);
+        if (_logStats) {
+            logComment("stats %s", _lastStats);
         }
+    }
 
-        /** A Matcher matching my pattern. */
-        protected final Matcher _matcher;
-        /** The function object that implements my command. */
-        protected final Consumer<Matcher> _processor;
+    /** Append a record of each game that is won to RECORDS (if not
+     *  null). */
+    void setRecordWriter(GameRecordWriter records) {
+        _records = records;
     }
 
-    /** A list of Commands describing the valid textual commands to the
-     *  Tablut program and the methods to process them. */
-    private Command[] _commands = {
+    /** Use POSITIONS (if not null) for the "explore" command. */
+    void setPositionIndex(PositionIndex positions) {
+        _positions = positions;
+    }
+
+    /** Copy search statistics to the log iff ON. */
+    void setLogStats(boolean on) {
+        _logStats = on;
+    }
+
+    /** Print a comment in the log.  The arguments FORMAT and ARGS are
+     *  as for String.format. */
+    void logComment(String format, Object... args) {
+        if (_journal != null) {
+            _journal.comment(format, args);
+        }
+    }
+
+    /** The commands handled by a Controller itself, rather than by a
+     *  GameCommands. */
+    private final Command[] _controllerCommands = {
         new Command("quit$", this::doQuit),
-        new Command("new$", this::doNew),
         new Command("seed\\s+(\\d+)$", this::doSeed),
         new Command("dump$", this::doDump),
-        new Command("undo$", this::doUndo),
+        new Command("stats$", this::doStats),
+        new Command("explore$", this::doExplore),
+        new Command("analyze\\s+(\\d+)$", this::doAnalyze),
+        new Command("go\\s+infinite$", this::doGoInfinite),
+        new Command("solve(?:\\s+(\\d+))?$", this::doSolve),
         new Command("manual\\s+(white|black)$", this::doManual),
         new Command("auto\\s+(white|black)$", this::doAuto),
-        new Command("limit\\s+(\\d+)$", this::doLimit),
-        new Command("toggle\\s+" + SQ + "$", this::doToggle),
-        new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
+        new Command("depth\\s+(\\d+)$", this::doDepth),
+        new Command("nodes\\s+(\\d+)$", this::doNodes),
+        new Command("time\\s+(\\d+)$", this::doTime)
     };
 
-    /** A Matcher whose Pattern matches comments. */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+    /** A list of Commands describing the valid textual commands to the
+     *  Tablut program and the methods to process them. */
+    private final Command[] _commands;
+
+    /** A Pattern matching the commands that end an infinite analysis. */
+    private static final Pattern STOP =
+        Pattern.compile("(?i)(stop|quit)\\s*(#.*)?");
+
+    /** Limits of an analysis that runs until stopped. */
+    private static final SearchLimits INFINITE_ANALYSIS =
+        SearchLimits.DEFAULT.withDepth(Search.MAX_DEPTH);
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    /** A Pattern matching the commands that may interrupt an AI
+     *  search. */
+    private static final Pattern INTERRUPT =
+        Pattern.compile("(?i)(undo|new|quit)\\s*(#.*)?");
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
      *  so, raising an IllegalArgumentException otherwise. */
     private void executeCommand(String cmnd) {
-        if (_logFile != null) {
-            _logFile.println(cmnd);
-            _logFile.flush();
+        if (_journal != null) {
+            _journal.append(cmnd);
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
-
-        if (cmnd.isEmpty()) {
-            return;
+        cmnd = Command.normalize(cmnd);
+        if (!cmnd.isEmpty() && !Command.execute(_commands, cmnd)) {
+            throw error("Bad command: %s", cmnd);
         }
-        for (Command parser : _commands) {
-            parser._matcher.reset(cmnd);
-            if (parser._matcher.matches()) {
-                parser._processor.accept(parser._matcher);
-                return;
-            }
-        }
-        throw error("Bad command: %s", cmnd);
-    }
-
-    /** Command "new". */
-    private void doNew(Matcher unused) {
-        _board.init();
-        _winner = null;
     }
 
     /** Command "manual <color>", where <color> is COLOR.group(1). */
@@ -241,23 +403,6 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "toggle". The first group of MAT is a square designation.
-     *  The contents of the square are modified:
-     *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
-    private void doToggle(Matcher mat) {
-        Square sq = sq(mat.group(1));
-        Piece piece;
-        switch (_board.get(sq)) {
-        case EMPTY: piece = WHITE; break;
-        case WHITE: piece = KING; break;
-        case KING: piece = BLACK; break;
-        default:
-            piece = EMPTY; break;
-        }
-        _board.put(piece, sq);
-        _board.clearUndo();
-    }
-
     /** Command "quit". */
     private void doQuit(Matcher unused) {
         _playing = false;
@@ -272,24 +417,53 @@ final class Controller {
         }
     }
 
-    /** Command "limit N" where N is the first captured group of MAT. */
-    private void doLimit(Matcher mat) {
+    /** Command "depth N" where N is the first captured group of MAT.  A
+     *  depth of 0 lets the AI choose. */
+    private void doDepth(Matcher mat) {
         try {
-            _board.setMoveLimit(Integer.parseInt(mat.group(1)));
+            _limits = _limits.withDepth(Integer.parseInt(mat.group(1)));
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
-    /** Execute a move command matched in MAT. */
-    private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
-        if (_winner == null) {
-            _winner = _board.winner();
-            if (_winner != null) {
-                _view.update(this);
-                _reporter.reportNote("%s wins.", _winner.toName());
-            }
+    /** Command "nodes N" where N is the first captured group of MAT.  A
+     *  bound of 0 means no bound. */
+    private void doNodes(Matcher mat) {
+        try {
+            _limits = _limits.withNodes(Long.parseLong(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "time N" where N, the first captured group of MAT, is in
+     *  milliseconds.  A bound of 0 means no bound. */
+    private void doTime(Matcher mat) {
+        try {
+            _limits = _limits.withMillis(Long.parseLong(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Append the record of the game just finished to the record file,
+     *  if there is one. */
+    private void writeRecord() {
+        if (_records == null) {
+            return;
+        }
+        GameRecord record = new GameRecord();
+        record.setWhite(manualWhite() ? GameRecord.MANUAL : GameRecord.AUTO);
+        record.setBlack(manualBlack() ? GameRecord.MANUAL : GameRecord.AUTO);
+        record.setSeed(_seed);
+        record.setGame(_board);
+        try {
+            _records.write(record);
+            _records.flush();
+        } catch (IOException excp) {
+            reportError("Could not write game record: %s",
+                        excp.getMessage());
         }
     }
 
@@ -298,24 +472,176 @@ final class Controller {
         System.out.printf("===%n%s===%n", _board);
     }
 
-    /** Undo back to before my last move, if there was one (otherwise does
-     *  nothing). */
-    private void doUndo(Matcher unused) {
-        if (_board.moveCount() > 1) {
-            if (_winner == null) {
-                _board.undo();
+    /** Print the statistics of the last AI search on standard output. */
+    private void doStats(Matcher unused) {
+        if (_lastStats == null) {
+            System.out.println("No search statistics.");
+        } else {
+            System.out.println(_lastStats);
+        }
+        System.out.println(AI.CACHE);
+    }
+
+    /** Print the statistics of the games in the position index that
+     *  reached the current position, by the move played next, on standard
+     *  output. */
+    private void doExplore(Matcher unused) {
+        if (_positions == null) {
+            throw error("no position index");
+        }
+        List<PositionIndex.Continuation> stats = _positions.explore(_board);
+        if (stats.get(0).games() == 0) {
+            System.out.println("No games reached this position.");
+            return;
+        }
+        System.out.printf("all     %s%n", stats.get(0));
+        for (PositionIndex.Continuation cont
+                 : stats.subList(1, stats.size())) {
+            System.out.printf("  %-5s %s%n",
+                              cont.move() == null ? "end" : cont.move(),
+                              cont);
+        }
+    }
+
+    /** Command "analyze N", where N is the first group of MAT: print the
+     *  best N moves in the current position with their values for the side
+     *  to move and principal variations, searched within the current
+     *  search limits. */
+    private void doAnalyze(Matcher mat) {
+        int count;
+        try {
+            count = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (_board.winner() != null) {
+            throw error("game is over");
+        }
+        Search search = new Search(_seed, AI.TABLE);
+        searchStarted(search::stop);
+        List<Variation> lines =
+            search.analyze(new Board(_board), count, _limits);
+        String interruption = searchFinished();
+        for (int k = 0; k < lines.size(); k += 1) {
+            System.out.printf("%d. %s%n", k + 1, lines.get(k));
+        }
+        System.out.printf("(%s)%n", search.stats());
+        if (interruption != null) {
+            executeCommand(interruption);
+        }
+    }
+
+    /** Command "solve [N]", where N is the optional first group of MAT:
+     *  try to prove that the side to move can force a win within N plies
+     *  (by default, Solver.DEFAULT_PLIES), expanding no more nodes than the
+     *  current node limit, if any (by default, Solver.DEFAULT_NODES).
+     *  The solver may be interrupted like an AI search.  On success,
+     *  print the winning line and record the proof in the AI's table. */
+    private void doSolve(Matcher mat) {
+        int plies;
+        try {
+            plies = mat.group(1) == null ? Solver.DEFAULT_PLIES
+                : Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (_board.winner() != null) {
+            throw error("game is over");
+        }
+        long nodes = _limits.nodes() == 0 ? Solver.DEFAULT_NODES
+            : _limits.nodes();
+        Solver solver = new Solver(Solver.DEFAULT_BITS, nodes);
+        Board board = new Board(_board);
+        String side = board.turn().toName();
+        searchStarted(solver::stop);
+        int result = solver.solve(board, plies);
+        String interruption = searchFinished();
+        String summary = String.format("%d nodes, %d ms", solver.nodes(),
+                                       solver.elapsedNanos() / NANOS_PER_MS);
+        if (result == Solver.PROVEN) {
+            StringBuilder line = new StringBuilder();
+            for (Move mv : solver.line()) {
+                line.append(' ').append(mv);
             }
-            _board.undo();
-            _winner = null;
-            _view.update(this);
+            System.out.printf("%s wins in %d plies:%s (proof tree %d, %s)%n",
+                              side, solver.line().size(), line,
+                              solver.proofSize(), summary);
+            solver.record(board, AI.TABLE);
+        } else if (result == Solver.DISPROVEN) {
+            System.out.printf("%s has no forced win within %d plies (%s)%n",
+                              side, plies, summary);
+        } else {
+            System.out.printf("unknown: %s (%s)%n",
+                              interruption == null ? "node limit reached"
+                              : "interrupted", summary);
+        }
+        if (interruption != null) {
+            executeCommand(interruption);
         }
     }
 
+    /** Command "go infinite": analyze the current position on a separate
+     *  thread, deepening until a "stop" (or "quit") command is read, and
+     *  print the depth, score, node count and principal variation after
+     *  every completed iteration.  Finally, print the best move found. */
+    private void doGoInfinite(Matcher unused) {
+        if (_board.winner() != null) {
+            throw error("game is over");
+        }
+        Board board = new Board(_board);
+        Search search = new Search(_seed, AI.TABLE);
+        search.setListener(lines -> reportIteration(search, lines.get(0)));
+        List<List<Variation>> result = new ArrayList<>();
+        Thread analysis = new Thread(() -> {
+            result.add(search.analyze(board, 1, INFINITE_ANALYSIS));
+        }, "analysis");
+        analysis.start();
+        String command;
+        Matcher stop = STOP.matcher("");
+        while (true) {
+            command = readLine(false);
+            if (command == null) {
+                break;
+            }
+            if (stop.reset(command).matches()) {
+                break;
+            }
+            reportError("analysis in progress; use \"stop\" to end it");
+        }
+        search.stop();
+        try {
+            analysis.join();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("interrupted analysis");
+        }
+        if (!result.isEmpty() && !result.get(0).isEmpty()) {
+            System.out.printf("bestmove %s%n", result.get(0).get(0).move());
+        }
+        if (command == null || stop.group(1).equalsIgnoreCase("quit")) {
+            _playing = false;
+        }
+    }
+
+    /** Print the completed iteration of SEARCH whose best line is LINE. */
+    private void reportIteration(Search search, Variation line) {
+        SearchStats stats = search.stats();
+        StringBuilder pv = new StringBuilder();
+        for (Move mv : line.pv()) {
+            pv.append(' ').append(mv);
+        }
+        System.out.printf("info depth %d score %s nodes %d nps %d"
+                          + " time %d pv%s%n",
+                          line.depth(), line.scoreString(), stats.nodes(),
+                          stats.nps(), stats.elapsedNanos() / NANOS_PER_MS,
+                          pv);
+    }
+
     /** The board. */
     private Board _board = new Board();
 
-    /** The winning side of the current game. */
-    private Piece _winner;
+    /** True iff the side to move has been found to have no legal move,
+     *  until the position is next replaced, edited or undone. */
+    private boolean _stalled;
 
     /** True while game is still active. */
     private boolean _playing;
@@ -326,12 +652,43 @@ final class Controller {
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
-    /** Log file, or null if absent. */
-    private PrintStream _logFile;
+    /** The seed last given to setSeed (initially random). */
+    private long _seed;
+
+    /** Journal of commands, or null if absent. */
+    private Journal _journal;
+
+    /** Writer of the records of finished games, or null. */
+    private GameRecordWriter _records;
+
+    /** Index of the positions of archived games, or null. */
+    private PositionIndex _positions;
+
+    /** Statistics of the last AI search, or null if none. */
+    private String _lastStats;
+
+    /** True iff search statistics are copied to the log. */
+    private boolean _logStats;
 
     /** Input source. */
     private Scanner _input;
 
+    /** Lines read from _input by the input thread, or null if input is
+     *  read synchronously. */
+    private BlockingQueue<String> _lines;
+
+    /** Marks the end of the input in _lines. */
+    private static final String END_OF_INPUT = new String("<EOF>");
+
+    /** Bounds on AI searches. */
+    private volatile SearchLimits _limits = SearchLimits.DEFAULT;
+
+    /** The search currently run by one of my players, or null. */
+    private Runnable _activeSearch;
+
+    /** The command that interrupted _activeSearch, or null. */
+    private String _interruption;
+
     /** The current White and Black players, each created from
      *  _autoPlayerTemplate or _manualPlayerTemplate. */
     private Player _white, _black;
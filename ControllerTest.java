@@ -0,0 +1,81 @@
+package tablut;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Controller, playing from text input.
+ *  @author Philipp
+ */
+public class ControllerTest {
+
+    /** A side left without a legal move by "setup" loses at once, and
+     *  the AI is not asked for a move. */
+    @Test
+    public void setupWithoutMoves() throws InterruptedException {
+        Recorder reporter = new Recorder();
+        play(reporter, "depth 1", "setup " + NO_WHITE_MOVES, "dump", "d5-1",
+             "setup " + NO_WHITE_MOVES, "quit");
+        assertEquals(List.of("Black wins.", "Black wins."), reporter._notes);
+        assertEquals(List.of("misplaced move"), reporter._errors);
+        assertTrue(reporter._moves.isEmpty());
+    }
+
+    /** Play a game between a manual Black and an automated White, with
+     *  the standard input consisting of LINES, reporting to REPORTER. */
+    private static void play(Reporter reporter, String... lines)
+        throws InterruptedException {
+        InputStream stdin = System.in;
+        try {
+            System.setIn(new ByteArrayInputStream(
+                (String.join("\n", lines) + "\n")
+                .getBytes(StandardCharsets.UTF_8)));
+            new Controller(new NullView(), null, reporter, new TextPlayer(),
+                           new AI(), false).play();
+        } finally {
+            System.setIn(stdin);
+        }
+    }
+
+    /** A Reporter that records the errors, wins and moves it is told
+     *  of. */
+    private static class Recorder implements Reporter {
+
+        @Override
+        public void reportError(String fmt, Object... args) {
+            _errors.add(String.format(fmt, args));
+        }
+
+        @Override
+        public void reportNote(String fmt, Object... args) {
+            String note = String.format(fmt, args);
+            if (note.endsWith("wins.")) {
+                _notes.add(note);
+            }
+        }
+
+        @Override
+        public void reportMove(Move move) {
+            _moves.add(move);
+        }
+
+        /** Errors reported. */
+        private final List<String> _errors = new ArrayList<>();
+        /** Wins reported. */
+        private final List<String> _notes = new ArrayList<>();
+        /** Moves reported. */
+        private final List<Move> _moves = new ArrayList<>();
+    }
+
+    /** A position with White to move, in which the king, on the throne,
+     *  is White's only piece and is surrounded by black pieces. */
+    private static final String NO_WHITE_MOVES =
+        "W" + "---------" + "---------" + "---------" + "----B----"
+        + "---BKB---" + "----B----" + "---------" + "---------"
+        + "---------";
+}
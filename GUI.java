@@ -67,17 +67,26 @@ class GUI extends TopLevel implements View, Reporter {
 
     /** Response to "Quit" button click. */
     private void quit(String dummy) {
-        _pendingCommands.offer("quit");
+        interruptOrOffer("quit");
     }
 
     /** Response to "Undo" button click. */
     private void undo(String dummy) {
-        _pendingCommands.offer("undo");
+        interruptOrOffer("undo");
     }
 
     /** Response to "New" button click. */
     private void newClick(String dummy) {
-        _pendingCommands.offer("new");
+        interruptOrOffer("new");
+    }
+
+    /** Use COMMAND to interrupt the AI search in progress, if any, and
+     *  otherwise queue it as usual. */
+    private void interruptOrOffer(String command) {
+        Controller controller = _controller;
+        if (controller == null || !controller.interruptSearch(command)) {
+            _pendingCommands.offer(command);
+        }
     }
 
     /** Response to "Seed" button click. */
@@ -153,6 +162,7 @@ class GUI extends TopLevel implements View, Reporter {
 
     @Override
     public void update(Controller controller) {
+        _controller = controller;
         Board board = controller.board();
 
         _widget.update(board);
@@ -170,6 +180,16 @@ class GUI extends TopLevel implements View, Reporter {
 
     }
 
+    @Override
+    public void searchStarted() {
+        _widget.searchStarted();
+    }
+
+    @Override
+    public void searchProgress(Move best, int depth, long nps) {
+        _widget.searchProgress(best, depth, nps);
+    }
+
     /** Display text in resource named TEXTRESOURCE in a new window titled
      *  TITLE. */
     private void displayText(String title, String textResource) {
@@ -223,6 +243,9 @@ class GUI extends TopLevel implements View, Reporter {
     /** The board widget. */
     private BoardWidget _widget;
 
+    /** The controller whose game I last displayed, or null. */
+    private volatile Controller _controller;
+
     /** Queue of pending commands resulting from menu clicks and moves on the
      *  board.  We use a blocking queue because the responses to clicks
      *  on the board and on menus happen in parallel to the methods that
@@ -0,0 +1,294 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static tablut.Piece.*;
+import static tablut.Square.*;
+import static tablut.Utils.error;
+
+/** A read-only archive of games in the compact binary form written by
+ *  GameArchiveWriter, read through memory-mapped buffers.  Any game may
+ *  be read directly by its number, and its result without decoding its
+ *  moves.  An archive may be read by several threads at once.
+ *
+ *  The file starts with a header of HEADER_SIZE bytes: MAGIC, VERSION
+ *  (ints), the number of games and the offset of the index (longs).
+ *  Games follow, each
+ *
+ *      flags      1 byte: result (0 unfinished, 1 White, 2 Black) in
+ *                 bits 0-1, HAS_LIMIT, HAS_SETUP
+ *      white      player code (see PLAYER_NAMES), followed for OTHER
+ *      black      by a byte count and that many bytes of UTF-8
+ *      seed       8 bytes
+ *      limit      varint, if HAS_LIMIT
+ *      setup      an encoded board in ASCII, if HAS_SETUP
+ *      count      varint number of moves
+ *      moves      count codes of MOVE_BITS bits each (see code), most
+ *                 significant bit first, padded to a whole byte
+ *
+ *  and the index holds the offsets of the games, as longs.  Multi-byte
+ *  numbers are big-endian, and varints hold 7 bits per byte, least
+ *  significant first, with the high bit set on all but the last.
+ *  @author Philipp
+ */
+final class GameArchive implements Closeable {
+
+    /** First word of an archive ("TBLA"). */
+    static final int MAGIC = 0x54424C41;
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 24;
+
+    /** Bits per move code. */
+    static final int MOVE_BITS = 11;
+
+    /** Number of distinct move codes. */
+    static final int NUM_CODES = NUM_SQUARES * 2 * (BOARD_SIZE - 1);
+
+    /** Flags in the first byte of a game. */
+    static final int RESULT_MASK = 3, HAS_LIMIT = 4, HAS_SETUP = 8;
+
+    /** Player code for a player named after the code: the player for
+     *  any other code c is PLAYER_NAMES[c]. */
+    static final int OTHER = 3;
+
+    /** Names of players with codes of their own. */
+    static final String[] PLAYER_NAMES = {
+        "?", GameRecord.MANUAL, GameRecord.AUTO
+    };
+
+    /** Size of the mapped windows of an archive, except for overlaps. */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /** Mask selecting a move code. */
+    private static final int CODE_MASK = (1 << MOVE_BITS) - 1;
+
+    /** Bits per byte. */
+    private static final int BYTE_BITS = 8;
+
+    /** Mask selecting a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Bits of a varint byte holding data, and its continuation bit. */
+    private static final int VARINT_BITS = 7, VARINT_MORE = 0x80;
+
+    /** CODES[m] is the code of the packed move m (without flags), and
+     *  MOVES[c] the packed move with code c. */
+    private static final int[] CODES = new int[Move.SQUARES_MASK + 1],
+        MOVES = new int[NUM_CODES];
+
+    static {
+        for (Square from : SQUARE_LIST) {
+            for (Square to : SQUARE_LIST) {
+                Move move = Move.mv(from, to);
+                if (move != null) {
+                    int c = from.index() * 2 * (BOARD_SIZE - 1);
+                    if (from.row() == to.row()) {
+                        c += to.col() - (to.col() > from.col() ? 1 : 0);
+                    } else {
+                        c += BOARD_SIZE - 1
+                            + to.row() - (to.row() > from.row() ? 1 : 0);
+                    }
+                    CODES[move.pack()] = c;
+                    MOVES[c] = move.pack();
+                }
+            }
+        }
+    }
+
+    /** Return the code, less than 2**MOVE_BITS, of packed move MOVE.
+     *  Each move from a square has one of 16 codes, numbered by
+     *  destination along its row and then its column. */
+    static int code(int move) {
+        return CODES[Move.squares(move)];
+    }
+
+    /** Return the packed move whose code is CODE. */
+    static int move(int code) {
+        return MOVES[code];
+    }
+
+    /** The archive in the file PATH. */
+    GameArchive(Path path) throws IOException {
+        _channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = _channel.size();
+        if (size < HEADER_SIZE) {
+            throw error("%s: not a game archive", path);
+        }
+        int windows = (int) ((size - 1) / WINDOW_SIZE) + 1;
+        _windows = new MappedByteBuffer[windows];
+        for (int k = 0; k < windows; k += 1) {
+            long start = k * WINDOW_SIZE;
+            long end = Math.min(size, start + WINDOW_SIZE + Long.BYTES);
+            _windows[k] = _channel.map(FileChannel.MapMode.READ_ONLY,
+                                       start, end - start);
+        }
+        if (getInt(0) != MAGIC) {
+            throw error("%s: not a game archive", path);
+        } else if (getInt(Integer.BYTES) != VERSION) {
+            throw error("%s: unsupported archive version %d", path,
+                        getInt(Integer.BYTES));
+        }
+        long count = getLong(2 * Integer.BYTES);
+        _indexOffset = getLong(2 * Integer.BYTES + Long.BYTES);
+        if (count > Integer.MAX_VALUE || count < 0 || _indexOffset < 0
+            || _indexOffset + count * Long.BYTES > size) {
+            throw error("%s: damaged game archive", path);
+        }
+        _size = (int) count;
+    }
+
+    /** Return the number of games. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the winner of game N, or null if it was unfinished. */
+    Piece result(int n) {
+        return resultOf(get(offset(n)));
+    }
+
+    /** Fill RECORD with game N. */
+    void read(int n, GameRecord record) {
+        record.clear();
+        long p = offset(n);
+        int flags = get(p);
+        p += 1;
+        record.setResult(resultOf(flags));
+        record.setWhite(getPlayer(p));
+        p += playerSize(p);
+        record.setBlack(getPlayer(p));
+        p += playerSize(p);
+        record.setSeed(getLong(p));
+        p += Long.BYTES;
+        if ((flags & HAS_LIMIT) != 0) {
+            record.setLimit((int) getVarint(p));
+            p += varintSize(p);
+        }
+        if ((flags & HAS_SETUP) != 0) {
+            record.setSetup(getString(p, NUM_SQUARES + 1));
+            p += NUM_SQUARES + 1;
+        }
+        int count = (int) getVarint(p);
+        p += varintSize(p);
+        IntMoveList moves = record.moves();
+        long bits = 0;
+        int nbits = 0;
+        for (int k = 0; k < count; k += 1) {
+            while (nbits < MOVE_BITS) {
+                bits = (bits << BYTE_BITS) | get(p);
+                p += 1;
+                nbits += BYTE_BITS;
+            }
+            nbits -= MOVE_BITS;
+            moves.add(MOVES[(int) (bits >>> nbits) & CODE_MASK]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Return the winner recorded in the game flags FLAGS. */
+    private static Piece resultOf(int flags) {
+        switch (flags & RESULT_MASK) {
+        case 1:
+            return WHITE;
+        case 2:
+            return BLACK;
+        default:
+            return null;
+        }
+    }
+
+    /** Return the offset of game N. */
+    private long offset(int n) {
+        if (n < 0 || n >= _size) {
+            throw new IndexOutOfBoundsException("game " + n);
+        }
+        return getLong(_indexOffset + (long) n * Long.BYTES);
+    }
+
+    /** Return the byte at offset P, as an unsigned value. */
+    private int get(long p) {
+        int k = (int) (p / WINDOW_SIZE);
+        return _windows[k].get((int) (p - k * WINDOW_SIZE)) & BYTE_MASK;
+    }
+
+    /** Return the int at offset P. */
+    private int getInt(long p) {
+        int k = (int) (p / WINDOW_SIZE);
+        return _windows[k].getInt((int) (p - k * WINDOW_SIZE));
+    }
+
+    /** Return the long at offset P. */
+    private long getLong(long p) {
+        int k = (int) (p / WINDOW_SIZE);
+        return _windows[k].getLong((int) (p - k * WINDOW_SIZE));
+    }
+
+    /** Return the varint at offset P. */
+    private long getVarint(long p) {
+        long result = 0;
+        for (int shift = 0; true; shift += VARINT_BITS) {
+            int b = get(p);
+            p += 1;
+            result |= (long) (b & ~VARINT_MORE) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Return the number of bytes in the varint at offset P. */
+    private int varintSize(long p) {
+        int size = 1;
+        while ((get(p + size - 1) & VARINT_MORE) != 0) {
+            size += 1;
+        }
+        return size;
+    }
+
+    /** Return the player whose code is at offset P. */
+    private String getPlayer(long p) {
+        int code = get(p);
+        return code == OTHER ? getString(p + 2, get(p + 1))
+            : PLAYER_NAMES[code];
+    }
+
+    /** Return the number of bytes in the player at offset P. */
+    private int playerSize(long p) {
+        return get(p) == OTHER ? 2 + get(p + 1) : 1;
+    }
+
+    /** Return the string encoded in UTF-8 by the LEN bytes at offset P. */
+    private String getString(long p, int len) {
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i += 1) {
+            bytes[i] = (byte) get(p + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** The file of the archive. */
+    private final FileChannel _channel;
+    /** The file mapped in windows: _windows[k] starts at offset
+     *  k * WINDOW_SIZE and overlaps the next window by the size of a
+     *  long, so that any number lies within the window in which it
+     *  starts. */
+    private final MappedByteBuffer[] _windows;
+    /** Number of games. */
+    private final int _size;
+    /** Offset of the index. */
+    private final long _indexOffset;
+}
@@ -0,0 +1,187 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of binary game archives.
+ *  @author Philipp
+ */
+public class GameArchiveTest {
+
+    /** Every rook move has its own code, of at most MOVE_BITS bits. */
+    @Test
+    public void moveCodes() {
+        HashSet<Integer> codes = new HashSet<>();
+        for (Square from : Square.SQUARE_LIST) {
+            for (Square to : Square.SQUARE_LIST) {
+                Move mv = Move.mv(from, to);
+                if (mv != null) {
+                    int code = GameArchive.code(mv.pack());
+                    assertTrue(code < 1 << GameArchive.MOVE_BITS);
+                    assertTrue(codes.add(code));
+                    assertEquals(mv.pack(), GameArchive.move(code));
+                }
+            }
+        }
+        assertEquals(GameArchive.NUM_CODES, codes.size());
+    }
+
+    /** Games read back in any order as written. */
+    @Test
+    public void roundTrip() throws IOException {
+        Random rand = new Random(SEED);
+        List<GameRecord> games = new ArrayList<>();
+        Path file = Files.createTempFile("tablut", ".tba");
+        try {
+            try (GameArchiveWriter writer = new GameArchiveWriter(file)) {
+                for (int k = 0; k < GAMES; k += 1) {
+                    GameRecord game = randomGame(rand, k);
+                    games.add(game);
+                    writer.write(game);
+                }
+            }
+            try (GameArchive archive = new GameArchive(file)) {
+                assertEquals(GAMES, archive.size());
+                GameRecord game = new GameRecord();
+                for (int k = GAMES - 1; k >= 0; k -= 1) {
+                    GameRecord expected = games.get(k);
+                    archive.read(k, game);
+                    assertEquals(expected.white(), game.white());
+                    assertEquals(expected.black(), game.black());
+                    assertEquals(expected.seed(), game.seed());
+                    assertEquals(expected.limit(), game.limit());
+                    assertEquals(expected.setup(), game.setup());
+                    assertEquals(expected.result(), game.result());
+                    assertEquals(expected.result(), archive.result(k));
+                    assertEquals(expected.moves().toMoves(),
+                                 game.moves().toMoves());
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** An aborted archive is deleted. */
+    @Test
+    public void abort() throws IOException {
+        Path file = Files.createTempFile("tablut", ".tba");
+        try {
+            GameArchiveWriter writer = new GameArchiveWriter(file);
+            writer.write(randomGame(new Random(SEED), 0));
+            writer.abort();
+            assertFalse(Files.exists(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** An archive that cannot be completed is deleted: here, because
+     *  the thread writing it is interrupted, which closes its channel. */
+    @Test
+    public void failedClose() throws IOException {
+        Path file = Files.createTempFile("tablut", ".tba");
+        try {
+            GameArchiveWriter writer = new GameArchiveWriter(file);
+            writer.write(randomGame(new Random(SEED), 0));
+            Thread.currentThread().interrupt();
+            try {
+                writer.close();
+                fail("interrupted close succeeded");
+            } catch (IOException excp) {
+                /* Expected. */
+            }
+            assertFalse(Files.exists(file));
+        } finally {
+            Thread.interrupted();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** A game whose setup is not a valid position is rejected, and
+     *  nothing of it is written. */
+    @Test
+    public void badSetup() throws IOException {
+        Path file = Files.createTempFile("tablut", ".tba");
+        try {
+            GameRecord game = randomGame(new Random(SEED), 0);
+            try (GameArchiveWriter writer = new GameArchiveWriter(file)) {
+                writer.write(game);
+                game.setSetup("Wxyz");
+                try {
+                    writer.write(game);
+                    fail("bad setup accepted");
+                } catch (IllegalArgumentException excp) {
+                    /* Expected. */
+                }
+                assertEquals(1, writer.size());
+            }
+            try (GameArchive archive = new GameArchive(file)) {
+                assertEquals(1, archive.size());
+                GameRecord copy = new GameRecord();
+                archive.read(0, copy);
+                assertNull(copy.setup());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Files that are not archives are rejected. */
+    @Test
+    public void notAnArchive() throws IOException {
+        Path file = Files.createTempFile("tablut", ".tba");
+        try {
+            Files.writeString(file, "[White \"auto\"]\nd1-c *\n\n\n\n\n");
+            new GameArchive(file).close();
+            fail("text accepted as an archive");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains("not a game archive"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return a random game, chosen by RAND, the Kth of the test: some
+     *  are unfinished, some have move limits, and some start from a
+     *  different position. */
+    private static GameRecord randomGame(Random rand, int k) {
+        Board b = new Board();
+        if (k % 4 == 1) {
+            b.put(EMPTY, Square.sq("d1"));
+            b.clearUndo();
+        }
+        if (k % 2 == 1) {
+            b.setMoveLimit(LIMIT);
+        }
+        while (b.winner() == null && (k % 3 != 0 || b.moveCount() < k)) {
+            List<Move> moves = b.legalMoves(b.turn());
+            b.makeMove(moves.get(rand.nextInt(moves.size())));
+        }
+        GameRecord game = new GameRecord();
+        game.setWhite(k % 5 == 0 ? "player " + k : GameRecord.AUTO);
+        game.setBlack(GameRecord.MANUAL);
+        game.setSeed(rand.nextLong());
+        game.setGame(b);
+        return game;
+    }
+
+    /** Seed of the random games. */
+    private static final long SEED = 43;
+
+    /** Number of random games. */
+    private static final int GAMES = 50;
+
+    /** Move limit of some of the games. */
+    private static final int LIMIT = 30;
+}
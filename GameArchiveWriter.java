@@ -0,0 +1,211 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static tablut.GameArchive.*;
+import static tablut.Piece.*;
+import static tablut.Utils.error;
+
+/** Writes a file of games in the binary form described in GameArchive.
+ *  Games are appended as they are written, and the index and header are
+ *  completed by close().  Until then the header is all zeros, so that an
+ *  archive whose writing was interrupted is not taken for a complete one;
+ *  abort() discards such an archive.
+ *  @author Philipp
+ */
+final class GameArchiveWriter implements Closeable {
+
+    /** Size of the output buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Initial capacity of the index. */
+    private static final int INITIAL_INDEX = 1024;
+
+    /** Bits per byte. */
+    private static final int BYTE_BITS = 8;
+
+    /** Bits of a varint byte holding data, and its continuation bit. */
+    private static final int VARINT_BITS = 7, VARINT_MORE = 0x80;
+
+    /** Longest player name that can be stored, in bytes. */
+    private static final int MAX_NAME = 255;
+
+    /** A writer of a new archive in the file PATH, replacing any file
+     *  that is there. */
+    GameArchiveWriter(Path path) throws IOException {
+        _channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        _path = path;
+        _position = HEADER_SIZE;
+        _channel.position(HEADER_SIZE);
+    }
+
+    /** Append RECORD.  It is an error if its setup, which is stored in
+     *  NUM_SQUARES + 1 bytes, is not a valid position, in which case
+     *  nothing is written. */
+    void write(GameRecord record) throws IOException {
+        if (record.setup() != null) {
+            Board.decode(record.setup());
+        }
+        if (_count == _offsets.length) {
+            _offsets = Arrays.copyOf(_offsets, 2 * _count);
+        }
+        _offsets[_count] = _position;
+        _count += 1;
+        Piece result = record.result();
+        int flags = result == WHITE ? 1 : result == BLACK ? 2 : 0;
+        if (record.limit() > 0) {
+            flags |= HAS_LIMIT;
+        }
+        if (record.setup() != null) {
+            flags |= HAS_SETUP;
+        }
+        putByte(flags);
+        putPlayer(record.white());
+        putPlayer(record.black());
+        ensure(Long.BYTES);
+        _buffer.putLong(record.seed());
+        _position += Long.BYTES;
+        if (record.limit() > 0) {
+            putVarint(record.limit());
+        }
+        if (record.setup() != null) {
+            putBytes(record.setup().getBytes(StandardCharsets.US_ASCII));
+        }
+        IntMoveList moves = record.moves();
+        putVarint(moves.size());
+        long bits = 0;
+        int nbits = 0;
+        for (int k = 0; k < moves.size(); k += 1) {
+            bits = (bits << MOVE_BITS) | code(moves.get(k));
+            nbits += MOVE_BITS;
+            while (nbits >= BYTE_BITS) {
+                nbits -= BYTE_BITS;
+                putByte((int) (bits >>> nbits));
+            }
+        }
+        if (nbits > 0) {
+            putByte((int) (bits << (BYTE_BITS - nbits)));
+        }
+    }
+
+    /** Return the number of games written. */
+    int size() {
+        return _count;
+    }
+
+    /** Write the index and header, and close the file.  If that fails,
+     *  the file is deleted, as by abort(). */
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = _position;
+            for (int k = 0; k < _count; k += 1) {
+                ensure(Long.BYTES);
+                _buffer.putLong(_offsets[k]);
+            }
+            flushBuffer();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(_count)
+                .putLong(indexOffset).flip();
+            while (header.hasRemaining()) {
+                _channel.write(header, header.position());
+            }
+            _channel.close();
+        } catch (IOException excp) {
+            try {
+                abort();
+            } catch (IOException suppressed) {
+                excp.addSuppressed(suppressed);
+            }
+            throw excp;
+        }
+    }
+
+    /** Close the file without completing it, and delete it. */
+    void abort() throws IOException {
+        try {
+            _channel.close();
+        } finally {
+            Files.deleteIfExists(_path);
+        }
+    }
+
+    /** Write the code of player NAME. */
+    private void putPlayer(String name) throws IOException {
+        for (int code = 0; code < PLAYER_NAMES.length; code += 1) {
+            if (PLAYER_NAMES[code].equals(name)) {
+                putByte(code);
+                return;
+            }
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME) {
+            throw error("player name too long: %s", name);
+        }
+        putByte(OTHER);
+        putByte(bytes.length);
+        putBytes(bytes);
+    }
+
+    /** Write VALUE, which is not negative, as a varint. */
+    private void putVarint(long value) throws IOException {
+        while (value >= VARINT_MORE) {
+            putByte((int) (value & (VARINT_MORE - 1)) | VARINT_MORE);
+            value >>>= VARINT_BITS;
+        }
+        putByte((int) value);
+    }
+
+    /** Write the low-order byte of B. */
+    private void putByte(int b) throws IOException {
+        ensure(1);
+        _buffer.put((byte) b);
+        _position += 1;
+    }
+
+    /** Write BYTES. */
+    private void putBytes(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            putByte(b);
+        }
+    }
+
+    /** Make room for N bytes in the buffer. */
+    private void ensure(int n) throws IOException {
+        if (_buffer.remaining() < n) {
+            flushBuffer();
+        }
+    }
+
+    /** Write the contents of the buffer to the file. */
+    private void flushBuffer() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    /** The name of the file being written. */
+    private final Path _path;
+    /** The file being written. */
+    private final FileChannel _channel;
+    /** Bytes not yet written to _channel. */
+    private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Offset in the file of the next byte written. */
+    private long _position;
+    /** Offsets of the games written, in _offsets[0 .. _count-1]. */
+    private long[] _offsets = new long[INITIAL_INDEX];
+    /** Number of games written. */
+    private int _count;
+}
@@ -0,0 +1,128 @@
+package tablut;
+
+import java.util.regex.Matcher;
+
+import static tablut.Piece.*;
+import static tablut.Square.*;
+import static tablut.Utils.error;
+
+/** The commands that change the position of a game: "new", "setup",
+ *  "limit", "toggle", "undo" and moves.  Controller, GameSession and
+ *  Journal.restore all apply these commands through a GameCommands, so
+ *  that each rule is stated once.  What else a client must do when the
+ *  position changes (stopping a search, announcing a winner) it does in
+ *  its Listener.
+ *  @author Philipp
+ */
+final class GameCommands {
+
+    /** Receives notice of the changes made by a GameCommands. */
+    interface Listener {
+
+        /** Called before the position is replaced, edited or undone. */
+        default void positionChanging() {
+        }
+
+        /** Called before a move entered by command is made, to check that
+         *  one may be; throws IllegalArgumentException if not. */
+        default void checkMove() {
+        }
+
+        /** Called after MOVE, entered by command, is made. */
+        default void moved(Move move) {
+        }
+    }
+
+    /** Commands acting on BOARD, which report to LISTENER. */
+    GameCommands(Board board, Listener listener) {
+        _board = board;
+        _listener = listener;
+    }
+
+    /** Return a new table of my commands, for use with Command.execute.
+     *  The move command, which matches any grammatical move, is last. */
+    Command[] commands() {
+        return new Command[] {
+            new Command("new$", this::doNew),
+            new Command("setup\\s+(\\S+)$", this::doSetup),
+            new Command("limit\\s+(\\d+)$", this::doLimit),
+            new Command("toggle\\s+" + SQ + "$", this::doToggle),
+            new Command("undo$", this::doUndo),
+            new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
+        };
+    }
+
+    /** Command "new". */
+    private void doNew(Matcher unused) {
+        _listener.positionChanging();
+        _board.init();
+    }
+
+    /** Command "setup <board>", where <board>, the first group of MAT, is
+     *  a position in the format of Board.encodedBoard().  Replaces the
+     *  position and side to move, and clears undo information. */
+    private void doSetup(Matcher mat) {
+        _listener.positionChanging();
+        _board.setPosition(mat.group(1));
+    }
+
+    /** Command "limit N" where N is the first captured group of MAT. */
+    private void doLimit(Matcher mat) {
+        try {
+            _board.setMoveLimit(Integer.parseInt(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "toggle". The first group of MAT is a square designation.
+     *  The contents of the square are modified:
+     *  EMPTY -> WHITE -> KING -> BLACK -> EMPTY.  Clears undo
+     *  information. */
+    private void doToggle(Matcher mat) {
+        Square sq = sq(mat.group(1));
+        Piece piece;
+        switch (_board.get(sq)) {
+        case EMPTY: piece = WHITE; break;
+        case WHITE: piece = KING; break;
+        case KING: piece = BLACK; break;
+        default:
+            piece = EMPTY; break;
+        }
+        _listener.positionChanging();
+        _board.put(piece, sq);
+        _board.clearUndo();
+    }
+
+    /** Command "undo": undo back to before the last move of the side to
+     *  move, if there was one (otherwise does nothing).  After a win, the
+     *  winning move is the one undone. */
+    private void doUndo(Matcher unused) {
+        if (_board.moveCount() > 1) {
+            _listener.positionChanging();
+            if (_board.winner() == null) {
+                _board.undo();
+            }
+            _board.undo();
+        }
+    }
+
+    /** Execute a move command matched in MAT, which must be legal. */
+    private void doMove(Matcher mat) {
+        if (_board.winner() != null) {
+            throw error("misplaced move");
+        }
+        _listener.checkMove();
+        Move move = Move.mv(mat.group(0));
+        if (move == null || !_board.isLegal(move)) {
+            throw error("invalid move: %s", mat.group(0));
+        }
+        _board.makeMove(move);
+        _listener.moved(move);
+    }
+
+    /** The board acted on. */
+    private final Board _board;
+    /** Receives notice of changes. */
+    private final Listener _listener;
+}
@@ -0,0 +1,159 @@
+package tablut;
+
+/** The record of one game: who played each side, the seed and move
+ *  limit it was played with, the starting position if it was not the
+ *  usual one, the result, and the moves, in packed form (see Move.pack).
+ *  GameRecords are mutable, so that a reader can fill the same one with
+ *  each game of an archive in turn.
+ *
+ *  The text form of a record, written by GameRecordWriter and read by
+ *  GameRecordReader, is a sequence of header lines, each a tag name and
+ *  a quoted value in brackets, followed by the moves in the notation of
+ *  Move.mv(String) and the result again, separated by white space:
+ *
+ *      [White "auto"]
+ *      [Black "manual"]
+ *      [Seed "5"]
+ *      [Limit "40"]
+ *      [Result "White"]
+ *      d1-c e5-7 c1-d e7-5 ... White
+ *
+ *  Result is White, Black, or * for an unfinished game.  Limit is
+ *  omitted when there is no move limit, and a Setup tag, whose value is
+ *  an encoded board (see Board.encodedBoard), is present only for games
+ *  that did not start from the initial position.  A record ends after
+ *  its result, or where the next one's headers begin if the result is
+ *  missing.  Text from '#' to the end of a line is ignored.
+ *  @author Philipp
+ */
+final class GameRecord {
+
+    /** Names used for manual and automated players. */
+    static final String MANUAL = "manual", AUTO = "auto";
+
+    /** An empty record. */
+    GameRecord() {
+        clear();
+    }
+
+    /** Reset me to the record of an unfinished game between two unknown
+     *  players with no moves. */
+    void clear() {
+        _white = _black = "?";
+        _seed = 0;
+        _limit = 0;
+        _setup = null;
+        _result = null;
+        _moves.clear();
+    }
+
+    /** Set my starting position, move limit, result and moves from the
+     *  game played so far on BOARD, which is not modified. */
+    void setGame(Board board) {
+        Board start = new Board(board);
+        while (start.moveCount() > 0) {
+            start.undo();
+        }
+        String setup = start.encodedBoard();
+        _setup = setup.equals(INITIAL_POSITION) ? null : setup;
+        _limit = board.moveLimit() == Integer.MAX_VALUE ? 0
+            : board.moveLimit();
+        _result = board.winner();
+        _moves.clear();
+        board.moves(_moves);
+    }
+
+    /** Return a board holding the starting position of this game, with
+     *  my move limit. */
+    Board startingBoard() {
+        Board board = _setup == null ? new Board() : Board.decode(_setup);
+        if (_limit > 0) {
+            board.setMoveLimit(_limit);
+        }
+        return board;
+    }
+
+    /** Return the player of White. */
+    String white() {
+        return _white;
+    }
+
+    /** Set the player of White to WHITE. */
+    void setWhite(String white) {
+        _white = white;
+    }
+
+    /** Return the player of Black. */
+    String black() {
+        return _black;
+    }
+
+    /** Set the player of Black to BLACK. */
+    void setBlack(String black) {
+        _black = black;
+    }
+
+    /** Return the seed of the game. */
+    long seed() {
+        return _seed;
+    }
+
+    /** Set the seed of the game to SEED. */
+    void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /** Return the move limit of the game, or 0 if there was none. */
+    int limit() {
+        return _limit;
+    }
+
+    /** Set the move limit of the game to LIMIT (0 for none). */
+    void setLimit(int limit) {
+        _limit = limit;
+    }
+
+    /** Return the encoded starting position, or null if the game started
+     *  from the initial position. */
+    String setup() {
+        return _setup;
+    }
+
+    /** Set the encoded starting position to SETUP (null for the initial
+     *  position). */
+    void setSetup(String setup) {
+        _setup = setup;
+    }
+
+    /** Return the winner, or null if the game was unfinished. */
+    Piece result() {
+        return _result;
+    }
+
+    /** Set the winner to RESULT (null if unfinished). */
+    void setResult(Piece result) {
+        _result = result;
+    }
+
+    /** Return the moves of the game, which may be modified. */
+    IntMoveList moves() {
+        return _moves;
+    }
+
+    /** The encoded initial position. */
+    private static final String INITIAL_POSITION =
+        new Board().encodedBoard();
+
+    /** Players of White and Black. */
+    private String _white, _black;
+    /** Seed of the game. */
+    private long _seed;
+    /** Move limit, or 0. */
+    private int _limit;
+    /** Encoded starting position, or null. */
+    private String _setup;
+    /** Winner, or null. */
+    private Piece _result;
+    /** The moves, packed. */
+    private final IntMoveList _moves = new IntMoveList();
+}
@@ -0,0 +1,245 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import static tablut.Piece.*;
+import static tablut.Utils.error;
+
+/** Reads GameRecords in the text form described in GameRecord, one at a
+ *  time, into a GameRecord supplied by the caller.  The input is scanned
+ *  a character at a time from a buffer of its own, and moves are
+ *  decoded directly from it, so that reading a game allocates nothing
+ *  beyond the growth of its move list and the occasional tag value.
+ *  @author Philipp
+ */
+final class GameRecordReader implements Closeable {
+
+    /** Size of the input buffer, in characters. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of characters in a move. */
+    private static final int MOVE_LENGTH = 4;
+
+    /** Length of the longest move or result. */
+    private static final int MAX_TOKEN = 5;
+
+    /** Radix of numbers in tags. */
+    private static final int RADIX = 10;
+
+    /** A reader of records from IN. */
+    GameRecordReader(Reader in) {
+        _in = in;
+    }
+
+    /** Read the next game into RECORD and return true, or return false
+     *  if there are no more games. */
+    boolean next(GameRecord record) throws IOException {
+        record.clear();
+        boolean found = false, inMoves = false;
+        while (true) {
+            int c = peek();
+            if (c < 0) {
+                return found;
+            } else if (c == '[') {
+                if (inMoves) {
+                    return true;
+                }
+                readTag(record);
+                found = true;
+            } else if (c == '#') {
+                skipLine();
+            } else if (Character.isWhitespace(c)) {
+                read();
+            } else {
+                int move = readMove();
+                if (move == Move.NONE) {
+                    return true;
+                }
+                record.moves().add(move);
+                found = inMoves = true;
+            }
+        }
+    }
+
+    /** Return the number of the line being read, counting from 1. */
+    int lineNumber() {
+        return _lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Read a header line and store its value in RECORD. */
+    private void readTag(GameRecord record) throws IOException {
+        read();
+        _name.setLength(0);
+        for (int c = peek(); c >= 0 && c != ' ' && c != '"' && c != '\n';
+             c = peek()) {
+            _name.append((char) read());
+        }
+        while (peek() == ' ') {
+            read();
+        }
+        expect('"');
+        _value.setLength(0);
+        for (int c = read(); c != '"'; c = read()) {
+            if (c < 0 || c == '\n') {
+                throw error("line %d: unterminated tag value", _lineNumber);
+            }
+            _value.append((char) c);
+        }
+        expect(']');
+        try {
+            if (equal(_name, "White")) {
+                record.setWhite(_white = string(_value, _white));
+            } else if (equal(_name, "Black")) {
+                record.setBlack(_black = string(_value, _black));
+            } else if (equal(_name, "Seed")) {
+                record.setSeed(Long.parseLong(_value, 0, _value.length(),
+                                              RADIX));
+            } else if (equal(_name, "Limit")) {
+                record.setLimit(Integer.parseInt(_value, 0, _value.length(),
+                                                 RADIX));
+            } else if (equal(_name, "Setup")) {
+                record.setSetup(_value.toString());
+            } else if (equal(_name, "Result")) {
+                record.setResult(result(_value));
+            }
+        } catch (NumberFormatException excp) {
+            throw error("line %d: bad number: %s", _lineNumber, _value);
+        }
+    }
+
+    /** Return the winner named by VALUE, the value of a Result tag. */
+    private Piece result(CharSequence value) {
+        if (equal(value, "*")) {
+            return null;
+        } else if (equal(value, WHITE.toName())) {
+            return WHITE;
+        } else if (equal(value, BLACK.toName())) {
+            return BLACK;
+        }
+        throw error("line %d: bad result: %s", _lineNumber, value);
+    }
+
+    /** Read a move and return it in packed form, or read the result
+     *  that ends a record and return Move.NONE. */
+    private int readMove() throws IOException {
+        int n;
+        for (n = 0; n < _move.length; n += 1) {
+            int c = peek();
+            if (c < 0 || c == '[' || c == '#' || Character.isWhitespace(c)) {
+                break;
+            }
+            _move[n] = (char) read();
+        }
+        if (equal(_move, n, "*") || equal(_move, n, WHITE.toName())
+            || equal(_move, n, BLACK.toName())) {
+            return Move.NONE;
+        }
+        char col = _move[0], row = _move[1], dest = _move[3];
+        Move move = null;
+        if (n == MOVE_LENGTH && col >= 'a' && col <= 'i'
+            && row >= '1' && row <= '9' && _move[2] == '-') {
+            Square from = Square.sq(col - 'a', row - '1');
+            if (dest >= 'a' && dest <= 'i') {
+                move = Move.mv(from, Square.sq(dest - 'a', row - '1'));
+            } else if (dest >= '1' && dest <= '9') {
+                move = Move.mv(from, Square.sq(col - 'a', dest - '1'));
+            }
+        }
+        if (move == null) {
+            throw error("line %d: bad move: %s", _lineNumber,
+                        new String(_move, 0, n));
+        }
+        return move.pack();
+    }
+
+    /** Read the character C, which must come next. */
+    private void expect(char c) throws IOException {
+        if (read() != c) {
+            throw error("line %d: expected %c", _lineNumber, c);
+        }
+    }
+
+    /** Skip the rest of the current line. */
+    private void skipLine() throws IOException {
+        for (int c = read(); c >= 0 && c != '\n'; c = read()) {
+            continue;
+        }
+    }
+
+    /** Return the next character without consuming it, or -1 at the end
+     *  of the input. */
+    private int peek() throws IOException {
+        if (_pos == _end) {
+            _end = _in.read(_buffer, 0, _buffer.length);
+            _pos = 0;
+            if (_end <= 0) {
+                _end = 0;
+                return -1;
+            }
+        }
+        return _buffer[_pos];
+    }
+
+    /** Consume and return the next character, or return -1 at the end of
+     *  the input. */
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            _pos += 1;
+            if (c == '\n') {
+                _lineNumber += 1;
+            }
+        }
+        return c;
+    }
+
+    /** Return true iff CHARS are the characters of STR. */
+    private static boolean equal(CharSequence chars, String str) {
+        return str.contentEquals(chars);
+    }
+
+    /** Return true iff the first N of CHARS are the characters of STR. */
+    private static boolean equal(char[] chars, int n, String str) {
+        if (n != str.length()) {
+            return false;
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (chars[i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the contents of CHARS as a String, which is PREVIOUS if it
+     *  has those contents. */
+    private static String string(CharSequence chars, String previous) {
+        return previous != null && equal(chars, previous) ? previous
+            : chars.toString();
+    }
+
+    /** The input. */
+    private final Reader _in;
+    /** Characters read from _in, of which _buffer[_pos .. _end-1] have
+     *  not yet been consumed. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+    /** Bounds of the unconsumed part of _buffer. */
+    private int _pos, _end;
+    /** Number of the line being read. */
+    private int _lineNumber = 1;
+    /** The name and value of the tag being read. */
+    private final StringBuilder _name = new StringBuilder(),
+        _value = new StringBuilder();
+    /** The characters of the move or result being read, with room for
+     *  one more than the longest. */
+    private final char[] _move = new char[MAX_TOKEN + 1];
+    /** The last values of the White and Black tags, or null. */
+    private String _white, _black;
+}
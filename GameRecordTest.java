@@ -0,0 +1,117 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of the text form of game records.
+ *  @author Philipp
+ */
+public class GameRecordTest {
+
+    /** Records of random games read back as written. */
+    @Test
+    public void roundTrip() throws IOException {
+        Random rand = new Random(SEED);
+        List<GameRecord> games = new ArrayList<>();
+        StringWriter text = new StringWriter();
+        GameRecordWriter writer = new GameRecordWriter(text);
+        for (int k = 0; k < GAMES; k += 1) {
+            Board b = new Board();
+            if (k % 2 == 1) {
+                b.setMoveLimit(LIMIT);
+            }
+            while (b.winner() == null && (k % 3 != 0 || b.moveCount() < k)) {
+                List<Move> moves = b.legalMoves(b.turn());
+                b.makeMove(moves.get(rand.nextInt(moves.size())));
+            }
+            GameRecord game = new GameRecord();
+            game.setWhite(GameRecord.AUTO);
+            game.setBlack("player " + k);
+            game.setSeed(rand.nextLong());
+            game.setGame(b);
+            games.add(game);
+            writer.write(game);
+        }
+        writer.close();
+        GameRecordReader reader =
+            new GameRecordReader(new StringReader(text.toString()));
+        GameRecord game = new GameRecord();
+        for (GameRecord expected : games) {
+            assertTrue(reader.next(game));
+            assertEquals(expected.white(), game.white());
+            assertEquals(expected.black(), game.black());
+            assertEquals(expected.seed(), game.seed());
+            assertEquals(expected.limit(), game.limit());
+            assertEquals(expected.result(), game.result());
+            assertEquals(expected.moves().toMoves(), game.moves().toMoves());
+            Board b = game.startingBoard();
+            for (int k = 0; k < game.moves().size(); k += 1) {
+                assertTrue(b.isLegal(game.moves().get(k)));
+                b.makeMove(game.moves().get(k));
+            }
+            assertEquals(game.result(), b.winner());
+        }
+        assertFalse(reader.next(game));
+    }
+
+    /** Comments, line breaks and set-up positions are accepted. */
+    @Test
+    public void handWritten() throws IOException {
+        Board start = new Board();
+        start.put(EMPTY, Square.sq("d1"));
+        String text = "# a game\n[White \"auto\"] [Black \"manual\"]\n"
+            + "[Setup \"" + start.encodedBoard() + "\"]\n"
+            + "[Result \"*\"]\n[Event \"ignored\"]\n"
+            + "e1-a e5-6 # comment\n  a1-d\n"
+            + "[White \"x\"]\n\n[Result \"Black\"]\nBlack\n"
+            + "[White \"y\"]\n";
+        GameRecordReader reader =
+            new GameRecordReader(new StringReader(text));
+        GameRecord game = new GameRecord();
+        assertTrue(reader.next(game));
+        assertEquals("auto", game.white());
+        assertEquals(start.encodedBoard(), game.setup());
+        assertNull(game.result());
+        assertEquals(List.of(Move.mv("e1-a"), Move.mv("e5-6"),
+                             Move.mv("a1-d")),
+                     game.moves().toMoves());
+        assertTrue(reader.next(game));
+        assertEquals("x", game.white());
+        assertEquals(BLACK, game.result());
+        assertTrue(game.moves().isEmpty());
+        assertTrue(reader.next(game));
+        assertEquals("y", game.white());
+        assertFalse(reader.next(game));
+    }
+
+    /** Malformed moves are reported with their line numbers. */
+    @Test
+    public void badMove() throws IOException {
+        GameRecordReader reader = new GameRecordReader(
+            new StringReader("[White \"a\"]\nd1-c\ne5-e\n"));
+        try {
+            reader.next(new GameRecord());
+            fail("bad move accepted");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("line 3: bad move: e5-e", excp.getMessage());
+        }
+    }
+
+    /** Seed of the random games. */
+    private static final long SEED = 42;
+
+    /** Number of random games. */
+    private static final int GAMES = 30;
+
+    /** Move limit of some of the games. */
+    private static final int LIMIT = 15;
+}
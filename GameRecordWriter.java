@@ -0,0 +1,78 @@
+package tablut;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/** Writes GameRecords in the text form described in GameRecord.
+ *  @author Philipp
+ */
+final class GameRecordWriter implements Closeable, Flushable {
+
+    /** Number of moves written per line. */
+    private static final int MOVES_PER_LINE = 12;
+
+    /** A writer of records to OUT, which it buffers. */
+    GameRecordWriter(Writer out) {
+        _out = out instanceof BufferedWriter ? (BufferedWriter) out
+            : new BufferedWriter(out);
+    }
+
+    /** Write RECORD.  Tag values may not contain quotation marks or line
+     *  breaks. */
+    void write(GameRecord record) throws IOException {
+        tag("White", record.white());
+        tag("Black", record.black());
+        tag("Seed", Long.toString(record.seed()));
+        if (record.limit() > 0) {
+            tag("Limit", Integer.toString(record.limit()));
+        }
+        if (record.setup() != null) {
+            tag("Setup", record.setup());
+        }
+        String result = record.result() == null ? "*"
+            : record.result().toName();
+        tag("Result", result);
+        IntMoveList moves = record.moves();
+        for (int k = 0; k < moves.size(); k += 1) {
+            _out.write(Move.unpack(moves.get(k)).toString());
+            if (k % MOVES_PER_LINE == MOVES_PER_LINE - 1) {
+                _out.newLine();
+            } else {
+                _out.write(' ');
+            }
+        }
+        _out.write(result);
+        _out.newLine();
+        _out.newLine();
+    }
+
+    /** Write the header line for tag NAME with value VALUE. */
+    private void tag(String name, String value) throws IOException {
+        if (value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+            || value.indexOf('\r') >= 0) {
+            throw new IOException("invalid value for tag " + name);
+        }
+        _out.write('[');
+        _out.write(name);
+        _out.write(" \"");
+        _out.write(value);
+        _out.write("\"]");
+        _out.newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _out.close();
+    }
+
+    /** Destination of the records. */
+    private final BufferedWriter _out;
+}
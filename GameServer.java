@@ -0,0 +1,195 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/** A server that plays games of Tablut with clients connecting to a port
+ *  on the local host.  Each connection gets its own GameSession, driven
+ *  by the lines the client sends, which are the usual text commands
+ *  (new, moves, undo, limit, seed, auto white, and so on).  Moves by
+ *  automated players, notes and errors are sent back one per line, as
+ *  a TextReporter would print them.  The connection is closed after a
+ *  "quit" command or when the client closes it.  If the server has a
+ *  directory of journals, each session is journaled to a file of its own
+ *  there, whose name is sent to the client, and from which the game may
+ *  be resumed by "java tablut.Main --resume=FILE".
+ *
+ *  Every connection has a thread that waits for its input, but sessions
+ *  share a small pool of threads for processing commands and a bounded
+ *  pool for AI searches, so that the number of games that may search at
+ *  once is limited whatever the number of connections.
+ *  @author Philipp
+ */
+final class GameServer {
+
+    /** Prefix and suffix of the names of session journals. */
+    private static final String JOURNAL_PREFIX = "game-",
+        JOURNAL_SUFFIX = ".log";
+
+    /** A server listening on PORT on the local host (any free port if
+     *  PORT is 0), whose AIs search on SEARCHTHREADS threads, and which
+     *  journals each session in a new file in the directory JOURNALS, if
+     *  it is not null. */
+    GameServer(int port, int searchThreads, Path journals)
+        throws IOException {
+        _journals = journals;
+        _socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        int cores = Runtime.getRuntime().availableProcessors();
+        _events = Executors.newFixedThreadPool(cores, daemons("events"));
+        _searches =
+            Executors.newFixedThreadPool(searchThreads, daemons("search"));
+        _connections = Executors.newCachedThreadPool(daemons("connection"));
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Accept connections until close() is called. */
+    void serve() throws IOException {
+        try {
+            while (true) {
+                Socket client = _socket.accept();
+                _connections.execute(() -> converse(client));
+            }
+        } catch (SocketException excp) {
+            if (!_socket.isClosed()) {
+                throw excp;
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /** Stop accepting connections and end all games.  May be called from
+     *  any thread. */
+    void close() {
+        try {
+            _socket.close();
+        } catch (IOException excp) {
+            /* Ignore IOException. */
+        }
+        _connections.shutdownNow();
+        _searches.shutdownNow();
+        _events.shutdownNow();
+    }
+
+    /** Play a game with the client connected through SOCKET.  The
+     *  socket is closed when the session ends, after its last report,
+     *  which may be after the client has stopped sending. */
+    private void converse(Socket socket) {
+        GameSession session = null;
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            out.println("Tablut 61B, staff version 1.0");
+            Reporter reporter = new LineReporter(out);
+            session = new GameSession(_events, _searches, reporter,
+                                      openJournal(reporter));
+            session.onClose(() -> close(socket));
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                session.submit(line);
+            }
+        } catch (IOException excp) {
+            /* The client has gone: end the session. */
+        }
+        if (session == null) {
+            close(socket);
+        } else {
+            session.submit("quit");
+        }
+    }
+
+    /** Return a journal in a new file in my directory of journals, after
+     *  telling REPORTER its name, or null if I keep no journals or the
+     *  file cannot be created (which is reported as an error). */
+    private Journal openJournal(Reporter reporter) {
+        if (_journals == null) {
+            return null;
+        }
+        try {
+            Path file = Files.createTempFile(_journals, JOURNAL_PREFIX,
+                                             JOURNAL_SUFFIX);
+            reporter.reportNote("Journal %s", file);
+            return new Journal(file, false);
+        } catch (IOException excp) {
+            reporter.reportError("Error: could not open journal: %s",
+                                 excp.getMessage());
+            return null;
+        }
+    }
+
+    /** Close SOCKET, ignoring errors. */
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException excp) {
+            /* Ignore IOException. */
+        }
+    }
+
+    /** Return a factory of daemon threads named after NAME. */
+    private static ThreadFactory daemons(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** A Reporter that sends its messages to a client, one per line. */
+    private static class LineReporter implements Reporter {
+
+        /** A Reporter writing to OUT. */
+        LineReporter(PrintWriter out) {
+            _out = out;
+        }
+
+        @Override
+        public void reportError(String fmt, Object... args) {
+            _out.println(String.format(fmt, args));
+        }
+
+        @Override
+        public void reportNote(String fmt, Object... args) {
+            _out.println(String.format("* " + fmt, args));
+        }
+
+        @Override
+        public void reportMove(Move move) {
+            _out.printf("* %s%n", move);
+        }
+
+        /** Where to send messages. */
+        private final PrintWriter _out;
+    }
+
+    /** The socket on which I accept connections. */
+    private final ServerSocket _socket;
+    /** Processes the commands of all sessions. */
+    private final ExecutorService _events;
+    /** Runs the searches of all sessions. */
+    private final ExecutorService _searches;
+    /** Runs the threads reading from clients. */
+    private final ExecutorService _connections;
+    /** Directory of session journals, or null if sessions are not
+     *  journaled. */
+    private final Path _journals;
+}
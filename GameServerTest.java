@@ -0,0 +1,88 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the game server, using clients on the local host.
+ *  @author Philipp
+ */
+public class GameServerTest {
+
+    /** Several clients play at once, each seeing only its own game, and
+     *  each connection is closed after "quit".  Each game is journaled
+     *  in a file of its own, from which it can be restored. */
+    @Test
+    public void concurrentClients() throws Exception {
+        Path journals = Files.createTempDirectory("journals");
+        GameServer server = new GameServer(0, 2, journals);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                /* Reported by the clients' failures. */
+            }
+        });
+        serving.start();
+        try {
+            List<Socket> sockets = new ArrayList<>();
+            for (int k = 0; k < CLIENTS; k += 1) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                           server.port());
+                sockets.add(socket);
+                PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                                  true);
+                out.printf("seed %d%ndepth 1%nd1-c%nbogus%n", k);
+            }
+            for (Socket socket : sockets) {
+                PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                                  true);
+                out.println("quit");
+                List<String> lines = new ArrayList<>();
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream()));
+                for (String line = in.readLine(); line != null;
+                     line = in.readLine()) {
+                    lines.add(line);
+                }
+                socket.close();
+                assertTrue(lines.get(0).startsWith("Tablut"));
+                assertTrue(lines.contains("Error: Bad command: bogus"));
+                assertTrue(lines.get(1).startsWith(JOURNAL));
+                Board board = Journal.restore(
+                    Paths.get(lines.get(1).substring(JOURNAL.length())));
+                assertEquals(Piece.BLACK, board.get(Square.sq("c1")));
+            }
+            try (Stream<Path> files = Files.list(journals)) {
+                assertEquals(CLIENTS, files.count());
+            }
+        } finally {
+            server.close();
+            serving.join();
+            try (Stream<Path> files = Files.list(journals)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(journals);
+        }
+    }
+
+    /** The start of the note naming a session's journal. */
+    private static final String JOURNAL = "* Journal ";
+
+    /** Number of clients. */
+    private static final int CLIENTS = 20;
+}
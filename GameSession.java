@@ -0,0 +1,334 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+
+import static tablut.Piece.*;
+import static tablut.Utils.error;
+
+/** A game of Tablut driven by events rather than by a blocking loop.
+ *  Like a Controller, a GameSession has its own board, players and log,
+ *  and accepts the same text commands for them.  Commands are submitted
+ *  from any thread and processed one at a time, in order, as tasks on a
+ *  shared executor, so that a small pool of threads can host any number
+ *  of sessions.  Moves by automated players are searched for on a
+ *  separate executor, and enter the session as events of their own when
+ *  the search finishes; no thread waits for a player in the meantime.
+ *  Messages, errors and moves go to the session's Reporter, which is
+ *  never called by two threads at once.
+ *  @author Philipp
+ */
+final class GameSession {
+
+    /** Maximum number of events processed in one task, so that a busy
+     *  session does not starve the others. */
+    private static final int EVENTS_PER_TASK = 16;
+
+    /** A session for a new game between a manual Black and automated
+     *  White, as for a new Controller.  Commands are processed on
+     *  EXECUTOR and AI searches run on SEARCHER.  Reports go to REPORTER,
+     *  and commands and moves are copied to JOURNAL if it is non-null. */
+    GameSession(Executor executor, Executor searcher, Reporter reporter,
+                Journal journal) {
+        _executor = executor;
+        _searcher = searcher;
+        _reporter = reporter;
+        _journal = journal;
+        _seed = new Random().nextLong();
+        _commands = Command.join(_sessionCommands, new GameCommands(
+            _board, new GameCommands.Listener() {
+                @Override
+                public void positionChanging() {
+                    cancelSearch();
+                }
+
+                @Override
+                public void checkMove() {
+                    if (isAuto(_board.turn())) {
+                        throw error("misplaced move");
+                    }
+                }
+
+                @Override
+                public void moved(Move move) {
+                    reportWinner();
+                }
+            }).commands());
+    }
+
+    /** Arrange for COMMAND to be executed after those submitted before
+     *  it.  May be called from any thread. */
+    void submit(String command) {
+        post(() -> execute(command));
+    }
+
+    /** Return true iff this session has ended because of a "quit"
+     *  command. */
+    synchronized boolean closed() {
+        return _closed;
+    }
+
+    /** Arrange for ACTION to be run when this session ends, after its
+     *  last report.  Must be called before the first submit. */
+    void onClose(Runnable action) {
+        _closeAction = action;
+    }
+
+    /** Arrange for EVENT to be processed after all events posted before
+     *  it. */
+    private void post(Runnable event) {
+        synchronized (_events) {
+            _events.add(event);
+            if (_scheduled) {
+                return;
+            }
+            _scheduled = true;
+        }
+        _executor.execute(this::processEvents);
+    }
+
+    /** Process pending events, handing the rest to another task if
+     *  there are too many. */
+    private void processEvents() {
+        for (int n = 0; n < EVENTS_PER_TASK; n += 1) {
+            Runnable event;
+            synchronized (_events) {
+                event = _events.poll();
+                if (event == null) {
+                    _scheduled = false;
+                    return;
+                }
+            }
+            event.run();
+        }
+        _executor.execute(this::processEvents);
+    }
+
+    /** Execute CMND, reporting any error. */
+    private void execute(String cmnd) {
+        if (closed()) {
+            return;
+        }
+        log(cmnd);
+        cmnd = Command.normalize(cmnd);
+        try {
+            if (!cmnd.isEmpty() && !Command.execute(_commands, cmnd)) {
+                throw error("Bad command: %s", cmnd);
+            }
+        } catch (IllegalArgumentException excp) {
+            _reporter.reportError("Error: %s", excp.getMessage());
+        }
+        advance();
+    }
+
+    /** Start a search for the next move if it is an automated player's
+     *  turn and none is in progress, or play the move at once if it is
+     *  in AI.CACHE.  If that player has no legal move (as after a
+     *  "setup"), report that it has lost instead, once. */
+    private void advance() {
+        while (!closed() && _search == null && _board.winner() == null
+               && isAuto(_board.turn())) {
+            if (!_board.hasMove(_board.turn())) {
+                if (_stalled != _generation) {
+                    _stalled = _generation;
+                    _reporter.reportNote("%s wins.",
+                                         _board.turn().opponent().toName());
+                }
+                return;
+            }
+            Board board = new Board(_board);
+            SearchLimits limits = _limits;
+            RootCache.Result cached = AI.CACHE.find(board, limits);
+            if (cached != null) {
+                play(cached.move());
+                continue;
+            }
+            Search search = new Search(_seed, AI.TABLE);
+            int generation = _generation;
+            _search = search;
+            _searcher.execute(() -> {
+                Move move = search.findMove(board, limits);
+                int depth = search.stats().depth(), score = search.score();
+                post(() -> searchFinished(generation, board, depth, move,
+                                          score));
+            });
+        }
+    }
+
+    /** Play MOVE, found by the search started in GENERATION, unless the
+     *  game has changed since, and record it in AI.CACHE as the best move
+     *  on BOARD to DEPTH plies, with value SCORE. */
+    private void searchFinished(int generation, Board board, int depth,
+                                Move move, int score) {
+        if (generation != _generation || closed()) {
+            return;
+        }
+        _search = null;
+        if (move != null) {
+            AI.CACHE.put(board, depth, move, score);
+            play(move);
+        }
+        advance();
+    }
+
+    /** Make MOVE, chosen by an automated player, on the board, and
+     *  announce it and the winner, if any. */
+    private void play(Move move) {
+        log(move.toString());
+        _reporter.reportMove(move);
+        _board.makeMove(move);
+        reportWinner();
+    }
+
+    /** Announce the winner, if there is one. */
+    private void reportWinner() {
+        if (_board.winner() != null) {
+            _reporter.reportNote("%s wins.", _board.winner().toName());
+        }
+    }
+
+    /** Abandon any search in progress and ignore its result. */
+    private void cancelSearch() {
+        if (_search != null) {
+            _search.stop();
+            _search = null;
+        }
+        _generation += 1;
+    }
+
+    /** Return true iff SIDE is played by an automated player. */
+    private boolean isAuto(Piece side) {
+        return side == WHITE ? _autoWhite : _autoBlack;
+    }
+
+    /** Copy CMND to the journal, if there is one. */
+    private void log(String cmnd) {
+        if (_journal != null) {
+            _journal.append(cmnd);
+        }
+    }
+
+    /** Command "quit". */
+    private void doQuit(Matcher unused) {
+        cancelSearch();
+        synchronized (this) {
+            _closed = true;
+        }
+        if (_journal != null) {
+            try {
+                _journal.close();
+            } catch (IOException excp) {
+                _reporter.reportError("Could not write journal: %s",
+                                      excp.getMessage());
+            }
+        }
+        if (_closeAction != null) {
+            _closeAction.run();
+        }
+    }
+
+    /** Command "seed N" where N is the first group of MAT. */
+    private void doSeed(Matcher mat) {
+        try {
+            _seed = Long.parseLong(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "dump": report the board. */
+    private void doDump(Matcher unused) {
+        _reporter.reportNote("===%n%s===", _board);
+    }
+
+    /** Command "manual <color>" or "auto <color>", where the first group
+     *  of MAT is "manual" or "auto" and the second is the color. */
+    private void doPlayer(Matcher mat) {
+        boolean auto = mat.group(1).equals("auto");
+        if (mat.group(2).equals("white")) {
+            _autoWhite = auto;
+        } else {
+            _autoBlack = auto;
+        }
+        if (_search != null && !isAuto(_board.turn())) {
+            cancelSearch();
+        }
+    }
+
+    /** Command "depth N", "nodes N" or "time N", where the first group of
+     *  MAT is the command and the second is N.  A value of 0 lifts the
+     *  bound. */
+    private void doSearchLimit(Matcher mat) {
+        try {
+            long n = Long.parseLong(mat.group(2));
+            switch (mat.group(1)) {
+            case "depth":
+                _limits = _limits.withDepth(Math.toIntExact(n));
+                break;
+            case "nodes":
+                _limits = _limits.withNodes(n);
+                break;
+            default:
+                _limits = _limits.withMillis(n);
+                break;
+            }
+        } catch (NumberFormatException | ArithmeticException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** The commands handled by a session itself, rather than by a
+     *  GameCommands. */
+    private final Command[] _sessionCommands = {
+        new Command("quit$", this::doQuit),
+        new Command("seed\\s+(\\d+)$", this::doSeed),
+        new Command("dump$", this::doDump),
+        new Command("(manual|auto)\\s+(white|black)$", this::doPlayer),
+        new Command("(depth|nodes|time)\\s+(\\d+)$", this::doSearchLimit)
+    };
+
+    /** The commands accepted by a session. */
+    private final Command[] _commands;
+
+    /** Runs my events. */
+    private final Executor _executor;
+    /** Runs my searches. */
+    private final Executor _searcher;
+    /** Receives my messages, errors and moves. */
+    private final Reporter _reporter;
+    /** Journal of commands, or null if absent. */
+    private final Journal _journal;
+    /** Events not yet processed, guarded by itself. */
+    private final Queue<Runnable> _events = new ArrayDeque<>();
+    /** True iff a task to process _events has been handed to _executor
+     *  and has not finished, guarded by _events. */
+    private boolean _scheduled;
+    /** True once the session has ended. */
+    private boolean _closed;
+    /** Run when the session ends, or null. */
+    private Runnable _closeAction;
+
+    /* The remaining fields are used only by events, which are processed
+     * one at a time. */
+
+    /** The board. */
+    private final Board _board = new Board();
+    /** True iff White or Black, respectively, is automated. */
+    private boolean _autoWhite = true, _autoBlack = false;
+    /** The seed last given to the seed command (initially random). */
+    private long _seed;
+    /** Bounds on AI searches. */
+    private SearchLimits _limits = SearchLimits.DEFAULT;
+    /** The search for the current move, or null. */
+    private Search _search;
+    /** Incremented whenever the game changes other than by a move, so
+     *  that the results of abandoned searches can be recognized. */
+    private int _generation;
+    /** The generation in which an automated player was found to have no
+     *  move, or -1. */
+    private int _stalled = -1;
+}
@@ -0,0 +1,191 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of event-driven game sessions.
+ *  @author Philipp
+ */
+public class GameSessionTest {
+
+    /** Many games between automated players, sharing a few threads, all
+     *  run to completion with legal moves. */
+    @Test
+    public void concurrentGames() throws InterruptedException {
+        ExecutorService events = Executors.newFixedThreadPool(THREADS);
+        ExecutorService searches = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch finished = new CountDownLatch(GAMES);
+        List<Recorder> recorders = new ArrayList<>();
+        for (int k = 0; k < GAMES; k += 1) {
+            Recorder recorder = new Recorder(finished);
+            recorders.add(recorder);
+            GameSession session =
+                new GameSession(events, searches, recorder, null);
+            for (String cmnd : new String[] {
+                    "seed " + k, "limit " + MOVE_LIMIT, "depth 1",
+                    "auto black" }) {
+                session.submit(cmnd);
+            }
+        }
+        try {
+            assertTrue("games unfinished",
+                       finished.await(TIMEOUT, TimeUnit.SECONDS));
+        } finally {
+            events.shutdownNow();
+            searches.shutdownNow();
+        }
+        for (Recorder recorder : recorders) {
+            assertTrue(recorder._errors.isEmpty());
+            Board b = new Board();
+            b.setMoveLimit(MOVE_LIMIT);
+            for (Move mv : recorder._moves) {
+                assertNull(b.winner());
+                assertTrue(b.isLegal(mv));
+                b.makeMove(mv);
+            }
+            assertNotNull(b.winner());
+        }
+    }
+
+    /** Moves by manual players are checked and answered by the automated
+     *  player; bad commands are reported without ending the session. */
+    @Test
+    public void manualMoves() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Recorder recorder = new Recorder(null);
+        GameSession session = new GameSession(pool, pool, recorder, null);
+        try {
+            session.submit("depth 1");
+            session.submit("e5-6");
+            session.submit("frobnicate");
+            session.submit("d1-c");
+            session.submit("e1-2");
+            session.submit("quit");
+            session.submit("d1-c");
+            long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+            while (!session.closed()
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(TIMEOUT, TimeUnit.SECONDS);
+        }
+        assertTrue(session.closed());
+        synchronized (recorder) {
+            assertEquals(3, recorder._errors.size());
+            assertTrue(recorder._moves.size() <= 1);
+        }
+    }
+
+    /** An automated player left without a legal move loses at once,
+     *  and no search is started for it. */
+    @Test
+    public void noMoves() {
+        int[] searches = { 0 };
+        Recorder recorder = new Recorder(null);
+        GameSession session =
+            new GameSession(Runnable::run, task -> {
+                    searches[0] += 1;
+                    assertTrue("search loops", searches[0] < MOVE_LIMIT);
+                    task.run();
+                }, recorder, null);
+        session.submit("depth 1");
+        session.submit("setup " + NO_BLACK_MOVES);
+        session.submit("auto black");
+        session.submit("dump");
+        session.submit("limit 10");
+        assertEquals(0, searches[0]);
+        assertEquals(1, recorder._wins);
+        assertTrue(recorder._errors.isEmpty());
+
+        session.submit("setup " + NO_BLACK_MOVES);
+        assertEquals(0, searches[0]);
+        assertEquals(2, recorder._wins);
+    }
+
+    /** A move found in AI.CACHE is played without a search. */
+    @Test
+    public void cachedMoves() {
+        Board board = new Board();
+        board.setMoveLimit(CACHED_LIMIT);
+        AI.CACHE.put(board, 1, Move.mv("d1-b"), 0);
+        int[] searches = { 0 };
+        Recorder recorder = new Recorder(null);
+        GameSession session =
+            new GameSession(Runnable::run, task -> searches[0] += 1,
+                            recorder, null);
+        session.submit("depth 1");
+        session.submit("limit " + CACHED_LIMIT);
+        session.submit("auto black");
+        assertEquals(List.of(Move.mv("d1-b")), recorder._moves);
+        assertEquals(1, searches[0]);
+    }
+
+    /** A Reporter that records what it is told. */
+    private static class Recorder implements Reporter {
+
+        /** A Recorder that counts down FINISHED, if not null, when a
+         *  game is won. */
+        Recorder(CountDownLatch finished) {
+            _finished = finished;
+        }
+
+        @Override
+        public synchronized void reportError(String fmt, Object... args) {
+            _errors.add(String.format(fmt, args));
+        }
+
+        @Override
+        public synchronized void reportNote(String fmt, Object... args) {
+            if (String.format(fmt, args).endsWith("wins.")) {
+                _wins += 1;
+                if (_finished != null) {
+                    _finished.countDown();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void reportMove(Move move) {
+            _moves.add(move);
+        }
+
+        /** Counted down at the end of a game, or null. */
+        private final CountDownLatch _finished;
+        /** Errors reported. */
+        private final List<String> _errors = new ArrayList<>();
+        /** Moves reported. */
+        private final List<Move> _moves = new ArrayList<>();
+        /** Number of wins reported. */
+        private int _wins;
+    }
+
+    /** Number of concurrent games. */
+    private static final int GAMES = 200;
+
+    /** Number of threads in each pool. */
+    private static final int THREADS = 4;
+
+    /** Move limit of each game. */
+    private static final int MOVE_LIMIT = 20;
+
+    /** Seconds to wait for the games. */
+    private static final int TIMEOUT = 60;
+
+    /** Move limit of the game whose first move is cached. */
+    private static final int CACHED_LIMIT = 7;
+
+    /** A position with Black to move and no black pieces. */
+    private static final String NO_BLACK_MOVES =
+        "B" + "---------" + "---------" + "---------" + "---------"
+        + "----K----" + "---------" + "---------" + "---------"
+        + "W--------";
+}
@@ -0,0 +1,108 @@
+package tablut;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** A growable list of moves in the packed form produced by Move.pack,
+ *  stored in an array of ints.  Unlike a Move.MoveList, it holds no
+ *  references, and clearing and refilling it allocates nothing once it
+ *  has grown to its working size.
+ *  @author Philipp
+ */
+final class IntMoveList {
+
+    /** Initial capacity. */
+    private static final int INITIAL_CAPACITY = 128;
+
+    /** An initially empty list. */
+    IntMoveList() {
+        _moves = new int[INITIAL_CAPACITY];
+    }
+
+    /** Return the number of moves. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff there are no moves. */
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /** Return the move at index K. */
+    int get(int k) {
+        if (k >= _size) {
+            throw new IndexOutOfBoundsException("index " + k);
+        }
+        return _moves[k];
+    }
+
+    /** Append MOVE. */
+    void add(int move) {
+        if (_size == _moves.length) {
+            _moves = Arrays.copyOf(_moves, 2 * _size);
+        }
+        _moves[_size] = move;
+        _size += 1;
+    }
+
+    /** Remove all moves. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Replace my contents with those of OTHER. */
+    void copy(IntMoveList other) {
+        if (_moves.length < other._size) {
+            _moves = new int[other._moves.length];
+        }
+        System.arraycopy(other._moves, 0, _moves, 0, other._size);
+        _size = other._size;
+    }
+
+    /** Return the index of the first move that goes between the same
+     *  squares as MOVE, or -1 if there is none. */
+    int indexOf(int move) {
+        int squares = Move.squares(move);
+        for (int k = 0; k < _size; k += 1) {
+            if (Move.squares(_moves[k]) == squares) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Remove the move at index K, keeping the others in order. */
+    void remove(int k) {
+        System.arraycopy(_moves, k + 1, _moves, k, _size - k - 1);
+        _size -= 1;
+    }
+
+    /** If a move between the same squares as MOVE is present, move it to
+     *  the front, keeping the others in order, and return true.
+     *  Otherwise return false. */
+    boolean moveToFront(int move) {
+        int k = indexOf(move);
+        if (k < 0) {
+            return false;
+        }
+        int found = _moves[k];
+        System.arraycopy(_moves, 0, _moves, 1, k);
+        _moves[0] = found;
+        return true;
+    }
+
+    /** Return my moves as a new list of Moves. */
+    List<Move> toMoves() {
+        Move.MoveList result = new Move.MoveList();
+        for (int k = 0; k < _size; k += 1) {
+            result.add(Move.unpack(_moves[k]));
+        }
+        return result;
+    }
+
+    /** The moves, in _moves[0 .. _size-1]. */
+    private int[] _moves;
+    /** Number of moves. */
+    private int _size;
+}
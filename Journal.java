@@ -0,0 +1,245 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** An append-only journal of the commands of a game, kept in a text file
+ *  in the same form as the input of the program.  Lines are appended to
+ *  a buffer in memory and written by a thread of the journal's own,
+ *  which commits them in groups: a group is written and forced to the
+ *  device when COMMIT_BYTES characters are waiting, or COMMIT_MILLIS
+ *  after the first of them was appended, whichever comes first.
+ *  Appending therefore never waits for the device, except when the
+ *  writer falls behind by more than MAX_PENDING characters.  After a
+ *  crash, restore recovers the position from the lines committed.
+ *  @author Philipp
+ */
+final class Journal implements Closeable {
+
+    /** Number of characters waiting that causes a commit. */
+    static final int COMMIT_BYTES = 1 << 14;
+
+    /** Longest time that a line waits to be committed, in milliseconds. */
+    static final long COMMIT_MILLIS = 50;
+
+    /** Number of characters waiting at which append blocks. */
+    static final int MAX_PENDING = 1 << 20;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    /** A journal writing to the file PATH, which is created if necessary.
+     *  Lines are added to the end of an existing file iff APPEND, and
+     *  otherwise replace its contents. */
+    Journal(Path path, boolean append) throws IOException {
+        _channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    append ? StandardOpenOption.APPEND
+                                    : StandardOpenOption.TRUNCATE_EXISTING);
+        _writer = new Thread(this::writeLoop, "journal " + path);
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /** Append LINE, which should not contain line breaks.  Lines appended
+     *  after an error in writing the journal are discarded. */
+    synchronized void append(String line) {
+        if (_closed) {
+            throw new IllegalStateException("journal is closed");
+        } else if (_failure != null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (_pending.length() >= MAX_PENDING && _failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (_pending.length() == 0) {
+            _firstPending = System.nanoTime();
+            notifyAll();
+        }
+        _pending.append(line).append(System.lineSeparator());
+        _appended += 1;
+        if (_pending.length() >= COMMIT_BYTES) {
+            notifyAll();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Append a line containing a comment formatted from FORMAT and ARGS,
+     *  as for String.format. */
+    void comment(String format, Object... args) {
+        append("# " + String.format(format, args));
+    }
+
+    /** Wait until all lines appended so far are committed. */
+    synchronized void sync() throws IOException {
+        long target = _appended;
+        _syncRequested = true;
+        notifyAll();
+        boolean interrupted = false;
+        while (_committed < target && _failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /** Commit all lines appended, stop the writer, and close the file.
+     *  Throws the first error in writing the journal, if any. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (_writer.isAlive()) {
+            try {
+                _writer.join();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        _channel.close();
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /** Return the board reached by the commands in the journal read from
+     *  IN: the commands that change the position (new, setup, limit,
+     *  toggle, undo, and moves) are applied by a GameCommands, as by a
+     *  Controller, and all others are ignored, as are commands that the
+     *  Controller would reject. */
+    static Board restore(BufferedReader in) throws IOException {
+        Board board = new Board();
+        Command[] commands =
+            new GameCommands(board, new GameCommands.Listener() { })
+            .commands();
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            try {
+                Command.execute(commands, Command.normalize(line));
+            } catch (IllegalArgumentException excp) {
+                /* Ignore rejected commands. */
+            }
+        }
+        return board;
+    }
+
+    /** Return the board reached by the commands in the journal in the
+     *  file PATH, as for restore(BufferedReader). */
+    static Board restore(Path path) throws IOException {
+        try (BufferedReader in =
+                 Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return restore(in);
+        }
+    }
+
+    /** The body of the writer thread: commit groups of lines until
+     *  closed. */
+    private void writeLoop() {
+        StringBuilder group = new StringBuilder();
+        while (true) {
+            long target;
+            synchronized (this) {
+                try {
+                    waitForGroup();
+                } catch (InterruptedException excp) {
+                    _closed = true;
+                }
+                if (_pending.length() == 0) {
+                    return;
+                }
+                StringBuilder full = _pending;
+                _pending = group;
+                group = full;
+                target = _appended;
+                _syncRequested = false;
+                notifyAll();
+            }
+            try {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(
+                    group.toString());
+                while (bytes.hasRemaining()) {
+                    _channel.write(bytes);
+                }
+                _channel.force(false);
+            } catch (IOException excp) {
+                synchronized (this) {
+                    _failure = excp;
+                    _pending.setLength(0);
+                    notifyAll();
+                }
+                return;
+            }
+            group.setLength(0);
+            synchronized (this) {
+                _committed = target;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Wait until a group of lines should be committed, or until the
+     *  journal is closed and no lines are waiting. */
+    private synchronized void waitForGroup() throws InterruptedException {
+        while (!_closed) {
+            if (_pending.length() == 0) {
+                wait();
+                continue;
+            }
+            long waited = (System.nanoTime() - _firstPending) / NANOS_PER_MS;
+            if (_syncRequested || _pending.length() >= COMMIT_BYTES
+                || waited >= COMMIT_MILLIS) {
+                return;
+            }
+            wait(COMMIT_MILLIS - waited);
+        }
+    }
+
+    /** The journal file. */
+    private final FileChannel _channel;
+    /** The thread that writes _channel. */
+    private final Thread _writer;
+    /** Lines appended and not yet taken by the writer. */
+    private StringBuilder _pending = new StringBuilder();
+    /** Time (System.nanoTime) at which the first line of _pending was
+     *  appended. */
+    private long _firstPending;
+    /** Numbers of lines appended and committed. */
+    private long _appended, _committed;
+    /** True iff sync is waiting for the lines appended to be committed. */
+    private boolean _syncRequested;
+    /** True iff the journal is closed. */
+    private boolean _closed;
+    /** The error that stopped the writer, or null. */
+    private IOException _failure;
+}
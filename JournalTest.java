@@ -0,0 +1,97 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of game journals.
+ *  @author Philipp
+ */
+public class JournalTest {
+
+    /** Lines appended by several threads are all committed, each once,
+     *  and those synced are in the file before the journal closes. */
+    @Test
+    public void groupCommit() throws Exception {
+        Path file = Files.createTempFile("tablut", ".log");
+        try {
+            Journal journal = new Journal(file, false);
+            Thread[] writers = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t += 1) {
+                int id = t;
+                writers[t] = new Thread(() -> {
+                    for (int k = 0; k < LINES; k += 1) {
+                        journal.append(id + " " + k);
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            journal.comment("%s", "synced");
+            journal.sync();
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(THREADS * LINES + 1, lines.size());
+            assertEquals("# synced", lines.get(lines.size() - 1));
+            assertEquals(THREADS * LINES + 1, new HashSet<>(lines).size());
+            journal.append("quit");
+            journal.close();
+            lines = Files.readAllLines(file);
+            assertEquals("quit", lines.get(lines.size() - 1));
+            new Journal(file, true).close();
+            assertEquals(lines, Files.readAllLines(file));
+            new Journal(file, false).close();
+            assertTrue(Files.readAllLines(file).isEmpty());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** The position is restored from the commands that change it,
+     *  including toggles, and other and invalid commands are ignored. */
+    @Test
+    public void restore() throws IOException {
+        String journal = "seed 3\n"
+            + "d1-c\n" + "e3-f\n" + "a4-b\n" + "f3-4\n"
+            + "undo\n" + "# a comment\n" + "auto black\n"
+            + "e1-2   # not a legal move\n" + "e3-2\n" + "bogus\n"
+            + "C1-B\n";
+        Board expected = new Board();
+        expected.makeMove(Move.mv("d1-c"));
+        expected.makeMove(Move.mv("e3-f"));
+        expected.makeMove(Move.mv("c1-b"));
+        Board board = Journal.restore(
+            new BufferedReader(new StringReader(journal)));
+        assertEquals(expected.toString(), board.toString());
+        assertEquals(expected.turn(), board.turn());
+        assertEquals(expected.moveCount(), board.moveCount());
+
+        board = Journal.restore(new BufferedReader(new StringReader(
+            journal + "new\n" + "limit 20\n" + "setup "
+            + expected.encodedBoard() + "\n")));
+        assertEquals(expected.toString(), board.toString());
+        assertEquals(0, board.moveCount());
+        assertEquals(20, board.moveLimit());
+
+        board = Journal.restore(new BufferedReader(new StringReader(
+            journal + "toggle a1\n" + "toggle a2\n" + "toggle a2\n")));
+        expected.put(Piece.WHITE, Square.sq("a1"));
+        expected.put(Piece.KING, Square.sq("a2"));
+        assertEquals(expected.toString(), board.toString());
+        assertEquals(0, board.moveCount());
+    }
+
+    /** Number of threads appending lines. */
+    private static final int THREADS = 4;
+
+    /** Number of lines appended by each thread. */
+    private static final int LINES = 5000;
+}
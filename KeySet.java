@@ -0,0 +1,139 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A set of 64-bit position keys, stored in an open-addressing hash
+ *  table of longs.  Adding, removing and testing keys allocate nothing
+ *  unless the table must grow.
+ *  @author Philipp
+ */
+final class KeySet {
+
+    /** Log2 of the initial capacity. */
+    private static final int INITIAL_BITS = 8;
+
+    /** An initially empty set. */
+    KeySet() {
+        _keys = new long[1 << INITIAL_BITS];
+        _mask = _keys.length - 1;
+    }
+
+    /** A set containing the members of SET. */
+    KeySet(KeySet set) {
+        copy(set);
+    }
+
+    /** Make my members those of SET. */
+    void copy(KeySet set) {
+        _keys = set._keys.clone();
+        _mask = set._mask;
+        _size = set._size;
+        _hasZero = set._hasZero;
+    }
+
+    /** Return the number of members. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff KEY is a member. */
+    boolean contains(long key) {
+        if (key == 0) {
+            return _hasZero;
+        }
+        for (int i = slot(key); _keys[i] != 0; i = (i + 1) & _mask) {
+            if (_keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Add KEY, returning true iff it was not already a member. */
+    boolean add(long key) {
+        if (key == 0) {
+            boolean added = !_hasZero;
+            _hasZero = true;
+            _size += added ? 1 : 0;
+            return added;
+        }
+        int i = slot(key);
+        while (_keys[i] != 0) {
+            if (_keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & _mask;
+        }
+        _keys[i] = key;
+        _size += 1;
+        if (2 * _size > _keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /** Remove KEY, returning true iff it was a member. */
+    boolean remove(long key) {
+        if (key == 0) {
+            boolean removed = _hasZero;
+            _hasZero = false;
+            _size -= removed ? 1 : 0;
+            return removed;
+        }
+        int i = slot(key);
+        while (_keys[i] != key) {
+            if (_keys[i] == 0) {
+                return false;
+            }
+            i = (i + 1) & _mask;
+        }
+        _keys[i] = 0;
+        _size -= 1;
+        for (int j = (i + 1) & _mask; _keys[j] != 0; j = (j + 1) & _mask) {
+            int home = slot(_keys[j]);
+            if (((j - home) & _mask) >= ((j - i) & _mask)) {
+                _keys[i] = _keys[j];
+                _keys[j] = 0;
+                i = j;
+            }
+        }
+        return true;
+    }
+
+    /** Remove all members. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        _size = 0;
+        _hasZero = false;
+    }
+
+    /** Return the slot at which a search for KEY starts. */
+    private int slot(long key) {
+        return (int) Zobrist.mix(key) & _mask;
+    }
+
+    /** Double the capacity of the table. */
+    private void grow() {
+        long[] old = _keys;
+        _keys = new long[2 * old.length];
+        _mask = _keys.length - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int i = slot(key);
+                while (_keys[i] != 0) {
+                    i = (i + 1) & _mask;
+                }
+                _keys[i] = key;
+            }
+        }
+    }
+
+    /** The hash table; 0 marks an empty slot. */
+    private long[] _keys;
+    /** Mask selecting a slot index from a hash. */
+    private int _mask;
+    /** Number of members. */
+    private int _size;
+    /** True iff 0 is a member. */
+    private boolean _hasZero;
+}
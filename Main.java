@@ -1,10 +1,16 @@
 package tablut;
 
 import java.util.List;
+import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static tablut.Utils.error;
 
@@ -15,18 +21,70 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** Names of the built-in tactical suite and its baseline, as
+     *  resources. */
+    static final String TACTICS = "tactics.txt",
+        TACTICS_BASELINE = "tactics-baseline.txt";
+
+    /** The main program.  ARGS may contain the option --display, or
+     *  --analyze to analyze a file of positions (see BatchAnalysis), or
+     *  --server=PORT to serve games on a local port (see GameServer), or
+     *  --tactics to run a tactical suite (see TacticalSuite), or
+     *  --fuzz=GAMES to check Board against ReferenceBoard (see
+     *  BoardFuzzer). */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1} --stats"
+                            + " --record={0,1} --positions={0,1}"
+                            + " --resume={0,1} --hash={0,1}"
+                            + " --analyze --depth=(\\d+) --time=(\\d+)"
+                            + " --threads=(\\d+) --server=(\\d+)"
+                            + " --journals={0,1} --archive"
+                            + " --index --tactics --nodes=(\\d+)"
+                            + " --fuzz=(\\d+) --seed=(\\d+) --={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE | --resume=FILE]"
+                               + " [--record=FILE] [--hash=FILE] [--stats]"
+                               + " [--positions=INDEX] [--strict]"
+                               + " [INPUT [OUTPUT]]");
+            System.err.println("       java tablut.Main --analyze"
+                               + " [--depth=N] [--time=MS] [--threads=N]"
+                               + " POSITIONS [OUTPUT]");
+            System.err.println("       java tablut.Main --server=PORT"
+                               + " [--threads=N] [--journals=DIR]");
+            System.err.println("       java tablut.Main --archive"
+                               + " RECORDS ARCHIVE");
+            System.err.println("       java tablut.Main --index"
+                               + " ARCHIVE INDEX");
+            System.err.println("       java tablut.Main --tactics"
+                               + " [--depth=N] [--time=MS] [--nodes=N]"
+                               + " [SUITE [BASELINE]]");
+            System.err.println("       java tablut.Main --fuzz=GAMES"
+                               + " [--seed=N] [--threads=N]");
             System.exit(1);
         }
 
+        if (options.contains("--hash")) {
+            useTableFile(Paths.get(options.getFirst("--hash")));
+        }
+
+        if (options.contains("--analyze")) {
+            System.exit(analyze(options));
+        } else if (options.contains("--server")) {
+            System.exit(serve(options));
+        } else if (options.contains("--archive")) {
+            System.exit(archive(options.get("--")));
+        } else if (options.contains("--index")) {
+            System.exit(index(options.get("--")));
+        } else if (options.contains("--tactics")) {
+            System.exit(tactics(options));
+        } else if (options.contains("--fuzz")) {
+            System.exit(fuzz(options));
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -49,6 +107,10 @@ public class Main {
         }
 
         Controller control = getController(options);
+        if (files.isEmpty() && !options.contains("--display")
+            && System.console() != null) {
+            control.readInputAsynchronously();
+        }
         System.out.println("Tablut 61B, staff version 1.0");
 
         try {
@@ -63,11 +125,266 @@ public class Main {
 
     }
 
+    /** Load the AI's transposition table from the file PATH, if it
+     *  exists, and arrange to save the table there when the program
+     *  exits. */
+    private static void useTableFile(Path path) {
+        if (Files.exists(path)) {
+            try {
+                AI.TABLE.load(path);
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Could not load table: %s%n",
+                                  excp.getMessage());
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                AI.TABLE.save(path);
+            } catch (IOException excp) {
+                System.err.printf("Could not save table: %s%n",
+                                  excp.getMessage());
+            }
+        }));
+    }
+
+    /** Analyze the positions in the file named by the first file
+     *  argument in OPTIONS, writing the results to the file named by the
+     *  second, if any, or else to the standard output, within the limits
+     *  and with the number of threads given by OPTIONS.  Returns an exit
+     *  code. */
+    private static int analyze(CommandArgs options) {
+        List<String> files = options.get("--");
+        if (files.isEmpty()) {
+            System.err.println("Error: no positions file");
+            return 1;
+        }
+        SearchLimits limits = SearchLimits.DEFAULT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            if (options.contains("--depth")) {
+                limits = limits.withDepth(
+                    Integer.parseInt(options.getFirst("--depth")));
+            }
+            if (options.contains("--time")) {
+                limits = limits.withMillis(
+                    Long.parseLong(options.getFirst("--time")));
+            }
+            if (options.contains("--threads")) {
+                threads = Integer.parseInt(options.getFirst("--threads"));
+            }
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: number too large");
+            return 1;
+        }
+        if (threads < 1) {
+            System.err.println("Error: need at least one thread");
+            return 1;
+        }
+        try (BufferedReader in =
+                 Files.newBufferedReader(Paths.get(files.get(0)));
+             PrintStream out = files.size() > 1
+                 ? new PrintStream(files.get(1)) : System.out) {
+            new BatchAnalysis(limits, threads).run(in, out);
+            return 0;
+        } catch (IOException excp) {
+            System.err.printf("Could not analyze positions: %s%n",
+                              excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Serve games on the port given by OPTIONS until killed, searching
+     *  on the number of threads it gives, and journaling sessions in the
+     *  directory it gives, if any.  Returns an exit code on failure. */
+    private static int serve(CommandArgs options) {
+        try {
+            int port = Integer.parseInt(options.getFirst("--server"));
+            int threads = options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            if (threads < 1) {
+                System.err.println("Error: need at least one thread");
+                return 1;
+            }
+            Path journals = options.contains("--journals")
+                ? Paths.get(options.getFirst("--journals")) : null;
+            GameServer server = new GameServer(port, threads, journals);
+            System.out.printf("Tablut server listening on port %d%n",
+                              server.port());
+            server.serve();
+            return 0;
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: number too large");
+            return 1;
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not serve games: %s%n",
+                              excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Convert the game records in the file named by FILES[0] to an
+     *  archive in the file named by FILES[1] (see GameArchive), which is
+     *  deleted if the records cannot all be read or the archive cannot
+     *  be completed.  Returns an exit code. */
+    private static int archive(List<String> files) {
+        if (files.size() != 2) {
+            System.err.println("Error: need a records file and an archive");
+            return 1;
+        }
+        GameRecord record = new GameRecord();
+        try (GameRecordReader in = new GameRecordReader(
+                 Files.newBufferedReader(Paths.get(files.get(0))))) {
+            GameArchiveWriter out =
+                new GameArchiveWriter(Paths.get(files.get(1)));
+            try {
+                while (in.next(record)) {
+                    out.write(record);
+                }
+            } catch (IOException | IllegalArgumentException excp) {
+                out.abort();
+                throw excp;
+            }
+            out.close();
+            System.out.printf("%d games archived%n", out.size());
+            return 0;
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not archive games: %s%n",
+                              excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Write an index of the positions in the games of the archive named
+     *  by FILES[0] to the file named by FILES[1] (see PositionIndex).
+     *  Returns an exit code. */
+    private static int index(List<String> files) {
+        if (files.size() != 2) {
+            System.err.println("Error: need an archive and an index");
+            return 1;
+        }
+        try (GameArchive archive = new GameArchive(Paths.get(files.get(0)))) {
+            long count = PositionIndex.build(archive, Paths.get(files.get(1)));
+            System.out.printf("%d positions of %d games indexed%n", count,
+                              archive.size());
+            return 0;
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not index games: %s%n",
+                              excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Run the tactical suite in the file named by the first file
+     *  argument in OPTIONS, or the suite built into the program if there
+     *  is none, within the limits given by OPTIONS (by default,
+     *  TacticalSuite.DEFAULT_NODES nodes for each position).  Print the
+     *  results, which may serve as a later baseline, and a summary.
+     *  Compare the results with the baseline in the file named by the
+     *  second file argument, or with the built-in baseline when running
+     *  the built-in suite, and report any regressions.  Returns an exit
+     *  code, which is 1 if there were regressions. */
+    private static int tactics(CommandArgs options) {
+        List<String> files = options.get("--");
+        SearchLimits limits = SearchLimits.DEFAULT;
+        try {
+            if (options.contains("--depth")) {
+                limits = limits.withDepth(
+                    Integer.parseInt(options.getFirst("--depth")));
+            }
+            if (options.contains("--time")) {
+                limits = limits.withMillis(
+                    Long.parseLong(options.getFirst("--time")));
+            }
+            if (options.contains("--nodes")) {
+                limits = limits.withNodes(
+                    Long.parseLong(options.getFirst("--nodes")));
+            }
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: number too large");
+            return 1;
+        }
+        if (!options.contains("--depth") && !options.contains("--time")
+            && !options.contains("--nodes")) {
+            limits = limits.withNodes(TacticalSuite.DEFAULT_NODES);
+        }
+        try (BufferedReader suite = openTactics(files, 0, TACTICS);
+             BufferedReader baseline = openTactics(
+                 files, 1, files.isEmpty() ? TACTICS_BASELINE : null)) {
+            List<TacticalSuite.Result> results =
+                new TacticalSuite(suite).run(limits);
+            for (TacticalSuite.Result result : results) {
+                System.out.println(result);
+            }
+            System.out.printf("# %s%n", TacticalSuite.summary(results));
+            if (baseline == null) {
+                return 0;
+            }
+            List<String> regressions = TacticalSuite.regressions(
+                results, TacticalSuite.readBaseline(baseline));
+            for (String regression : regressions) {
+                System.err.printf("Regression: %s%n", regression);
+            }
+            return regressions.isEmpty() ? 0 : 1;
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not run tactics: %s%n",
+                              excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Play the number of random games given by OPTIONS on both Board
+     *  and ReferenceBoard, with the seed and number of threads it gives,
+     *  and report the first divergence, shrunk.  Returns an exit code,
+     *  which is 1 if the boards diverged. */
+    private static int fuzz(CommandArgs options) {
+        try {
+            long games = Long.parseLong(options.getFirst("--fuzz"));
+            long seed = options.contains("--seed")
+                ? Long.parseLong(options.getFirst("--seed")) : 0;
+            int threads = options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            if (threads < 1) {
+                System.err.println("Error: need at least one thread");
+                return 1;
+            }
+            BoardFuzzer fuzzer = new BoardFuzzer(seed);
+            BoardFuzzer.Script divergence = fuzzer.run(games, threads);
+            System.out.printf("%d games, %d steps checked%n",
+                              fuzzer.games(), fuzzer.steps());
+            if (divergence == null) {
+                System.out.println("No divergence");
+                return 0;
+            }
+            System.out.println(divergence);
+            return 1;
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: number too large");
+            return 1;
+        }
+    }
+
+    /** Return a reader of the file named by FILES[K], if there is one,
+     *  or else of the resource named RESOURCE, or null if RESOURCE is
+     *  null. */
+    private static BufferedReader openTactics(List<String> files, int k,
+                                              String resource)
+        throws IOException {
+        if (k < files.size()) {
+            return Files.newBufferedReader(Paths.get(files.get(k)));
+        } else if (resource == null) {
+            return null;
+        }
+        return new BufferedReader(
+            new InputStreamReader(Utils.getResource(resource)));
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
         GUI gui;
-        PrintStream log;
+        Journal log;
         View view;
         Reporter reporter;
 
@@ -88,15 +405,51 @@ public class Main {
         }
 
         log = null;
-        if (options.contains("--log")) {
+        Board resumed = null;
+        if (options.contains("--log") && options.contains("--resume")) {
+            throw error("--log and --resume are exclusive");
+        } else if (options.contains("--log")) {
             try {
-                log = new PrintStream(options.getFirst("--log"));
+                log = new Journal(Paths.get(options.getFirst("--log")),
+                                  false);
             } catch (IOException excp) {
                 throw error("Could not open log file");
             }
+        } else if (options.contains("--resume")) {
+            Path file = Paths.get(options.getFirst("--resume"));
+            try {
+                if (Files.exists(file)) {
+                    resumed = Journal.restore(file);
+                }
+                log = new Journal(file, true);
+            } catch (IOException excp) {
+                throw error("Could not resume from journal");
+            }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer,
+                           new AI(), options.contains("--strict"));
+        if (resumed != null) {
+            control.restore(resumed);
+        }
+        control.setLogStats(options.contains("--stats"));
+        if (options.contains("--record")) {
+            try {
+                control.setRecordWriter(new GameRecordWriter(
+                    new FileWriter(options.getFirst("--record"), true)));
+            } catch (IOException excp) {
+                throw error("Could not open record file");
+            }
+        }
+        if (options.contains("--positions")) {
+            try {
+                control.setPositionIndex(new PositionIndex(
+                    Paths.get(options.getFirst("--positions"))));
+            } catch (IOException excp) {
+                throw error("Could not open position index");
+            }
+        }
+        return control;
     }
 }
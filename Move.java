@@ -25,6 +25,18 @@ final class Move {
     static final Pattern MOVE_PATTERN =
         Pattern.compile(String.format("(([a-i])([1-9]))-(?:([a-i])|([1-9]))"));
 
+    /** Bits of a square index within a packed move. */
+    static final int SQ_BITS = 7;
+
+    /** Mask selecting the squares (without flags) of a packed move. */
+    static final int SQUARES_MASK = (1 << (2 * SQ_BITS)) - 1;
+
+    /** Flag set in packed moves made by the king. */
+    static final int KING_FLAG = 1 << (2 * SQ_BITS);
+
+    /** The packed form of no move.  No legal move packs to NONE. */
+    static final int NONE = 0;
+
     /** Return the square moved from. */
     Square from() {
         return _from;
@@ -51,14 +63,14 @@ final class Move {
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
+        Matcher mat = MOVE_PATTERN.matcher(str);
+        if (mat.matches()) {
+            Square from = sq(mat.group(1));
             Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
+            if (mat.group(5) == null) {
+                to = sq(mat.group(4), mat.group(3));
             } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
+                to = sq(mat.group(2), mat.group(5));
             }
             return mv(from, to);
         }
@@ -70,10 +82,57 @@ final class Move {
         return Math.abs(_to.col() - _from.col() + _to.row() - _from.row());
     }
 
+    /** Return the packed form of this move, without flags. */
+    int pack() {
+        return _packed;
+    }
+
+    /** Return the packed form of MOVE, without flags, or NONE if MOVE is
+     *  null.  A packed move holds the index of the square moved from in
+     *  bits SQ_BITS and above, that of the square moved to in the low
+     *  SQ_BITS bits, and flags above SQUARES_MASK. */
+    static int pack(Move move) {
+        return move == null ? NONE : move._packed;
+    }
+
+    /** Return the packed move from the square with index FROM to that
+     *  with index TO, without flags. */
+    static int pack(int from, int to) {
+        return (from << SQ_BITS) | to;
+    }
+
+    /** Return the Move whose squares are those of the packed move PACKED,
+     *  or null if PACKED is NONE. */
+    static Move unpack(int packed) {
+        if (squares(packed) == NONE) {
+            return null;
+        }
+        return MOVES[from(packed)][to(packed)];
+    }
+
+    /** Return the index of the square moved from in packed move PACKED. */
+    static int from(int packed) {
+        return (packed >>> SQ_BITS) & ((1 << SQ_BITS) - 1);
+    }
+
+    /** Return the index of the square moved to in packed move PACKED. */
+    static int to(int packed) {
+        return packed & ((1 << SQ_BITS) - 1);
+    }
+
+    /** Return packed move PACKED without its flags. */
+    static int squares(int packed) {
+        return packed & SQUARES_MASK;
+    }
+
+    /** Return true iff packed move PACKED is flagged as a king move. */
+    static boolean isKingMove(int packed) {
+        return (packed & KING_FLAG) != 0;
+    }
+
     /** Return true iff STR has the right format for a Move. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
     }
 
     @Override
@@ -97,6 +156,7 @@ final class Move {
     /** Construct the Move FROM-TO. */
     private Move(Square from, Square to) {
         _from = from; _to = to;
+        _packed = pack(from.index(), to.index());
         if (_from.col() == _to.col()) {
             _str = String.format("%s-%c", from, (char) to.row() + '1');
         } else {
@@ -138,8 +198,8 @@ final class Move {
 
     /** The components of this Move. */
     private final Square _from, _to;
+    /** The packed form of this Move. */
+    private final int _packed;
     /** The printed form of this Move. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
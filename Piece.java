@@ -54,6 +54,14 @@ enum Piece {
         return _value;
     }
 
+    /** Return the Piece whose value() is VALUE. */
+    static Piece ofValue(int value) {
+        return BY_VALUE[value];
+    }
+
+    /** The Pieces, indexed by value(). */
+    private static final Piece[] BY_VALUE = { EMPTY, WHITE, BLACK, KING };
+
     /** The symbol used for the piece in textual board printouts. */
     private final String _symbol;
     /** The name in used in messages. */
@@ -0,0 +1,494 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static tablut.Piece.*;
+import static tablut.Utils.error;
+
+/** An index of every position reached in the games of a GameArchive,
+ *  kept in a file sorted by Zobrist key (see Board.key) and read through
+ *  memory-mapped buffers, so that the games reaching a position are
+ *  found by binary search without reading the archive.
+ *
+ *  The file starts with a header of HEADER_SIZE bytes: MAGIC, VERSION
+ *  (ints) and the number of entries (a long).  Entries of ENTRY_SIZE
+ *  bytes follow, one for each position of each game (the starting
+ *  position, the position after each move), in increasing order of key
+ *  as an unsigned number, and in order of game and ply for equal keys:
+ *
+ *      key        8 bytes: Board.key() of the position
+ *      game       4 bytes: number of the game in the archive
+ *      ply        PLY_BITS bits: number of moves made before the position
+ *      result     2 bits: result of the game, coded as in GameArchive
+ *      next       GameArchive.MOVE_BITS bits: code (see GameArchive.code)
+ *                 of the move played from the position, or END if the
+ *                 game ended there
+ *
+ *  with the last three packed into an int, ply most significant.  Since
+ *  each entry carries the move played next and the game's result, the
+ *  statistics of a position need nothing but its entries.  Positions are
+ *  identified only by their 64-bit keys, so distinct positions may very
+ *  rarely be merged.
+ *
+ *  An index is built by sorting runs of at most RUN_ENTRIES entries in
+ *  memory.  If there is more than one run, the runs are written to
+ *  temporary files beside the index and merged, so that the size of an
+ *  archive that can be indexed is limited by disk space, not memory.
+ *  @author Philipp
+ */
+final class PositionIndex implements Closeable {
+
+    /** First word of an index ("TBPI"). */
+    static final int MAGIC = 0x54425049;
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 16;
+
+    /** Size of an entry in bytes. */
+    static final int ENTRY_SIZE = 16;
+
+    /** Code of the move after the last position of a game. */
+    static final int END = (1 << GameArchive.MOVE_BITS) - 1;
+
+    /** Bits of an entry holding the ply. */
+    static final int PLY_BITS = 19;
+
+    /** Position of the result and ply in the last int of an entry. */
+    private static final int RESULT_SHIFT = GameArchive.MOVE_BITS,
+        PLY_SHIFT = RESULT_SHIFT + 2;
+
+    /** Size of the mapped windows of an index: a whole number of
+     *  entries. */
+    private static final long WINDOW_SIZE = (long) ENTRY_SIZE << 26;
+
+    /** Size of the output buffer used by build, in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Initial capacity of the entry arrays used by build. */
+    private static final int INITIAL_ENTRIES = 1 << 12;
+
+    /** Bits of the key sorted by each pass of build's radix sort. */
+    private static final int RADIX_BITS = 16;
+
+    /** Largest number of entries sorted in memory by build: 64 MiB of
+     *  entries, and as much again while sorting. */
+    static final int RUN_ENTRIES = 1 << 22;
+
+    /** Write an index of the positions in the games of ARCHIVE to the
+     *  file PATH, replacing any file there, and return its number of
+     *  entries. */
+    static long build(GameArchive archive, Path path) throws IOException {
+        return build(archive, path, RUN_ENTRIES);
+    }
+
+    /** As for build(ARCHIVE, PATH), but sorting at most RUN entries in
+     *  memory at a time. */
+    static long build(GameArchive archive, Path path, int run)
+        throws IOException {
+        long[] keys = new long[Math.min(INITIAL_ENTRIES, run)],
+            values = new long[keys.length];
+        int count = 0;
+        long total = 0;
+        ArrayList<Path> runs = new ArrayList<>();
+        try {
+            GameRecord game = new GameRecord();
+            for (int n = 0; n < archive.size(); n += 1) {
+                archive.read(n, game);
+                IntMoveList moves = game.moves();
+                if (moves.size() >= 1 << PLY_BITS) {
+                    throw error("game %d: too many moves", n);
+                }
+                int result = game.result() == WHITE ? 1
+                    : game.result() == BLACK ? 2 : 0;
+                Board board = game.startingBoard();
+                for (int ply = 0; ply <= moves.size(); ply += 1) {
+                    int next = END;
+                    if (ply < moves.size()) {
+                        if (!board.isLegal(moves.get(ply))) {
+                            throw error("game %d: illegal move %s at"
+                                        + " ply %d", n,
+                                        Move.unpack(moves.get(ply)), ply);
+                        }
+                        next = GameArchive.code(moves.get(ply));
+                    }
+                    if (count == run) {
+                        sort(keys, values, count);
+                        runs.add(writeRun(keys, values, count, path));
+                        count = 0;
+                    } else if (count == keys.length) {
+                        int size = (int) Math.min(2L * count, run);
+                        keys = Arrays.copyOf(keys, size);
+                        values = Arrays.copyOf(values, size);
+                    }
+                    keys[count] = board.key();
+                    values[count] = (long) n << Integer.SIZE
+                        | Integer.toUnsignedLong(ply << PLY_SHIFT
+                                                 | result << RESULT_SHIFT
+                                                 | next);
+                    count += 1;
+                    total += 1;
+                    if (ply < moves.size()) {
+                        board.makeMove(moves.get(ply));
+                    }
+                }
+            }
+            sort(keys, values, count);
+            if (runs.isEmpty()) {
+                try (FileChannel out = create(path)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                    buffer.putInt(MAGIC).putInt(VERSION).putLong(total);
+                    write(out, buffer, keys, values, count);
+                }
+            } else {
+                runs.add(writeRun(keys, values, count, path));
+                merge(runs, path, total);
+            }
+        } finally {
+            for (Path file : runs) {
+                Files.deleteIfExists(file);
+            }
+        }
+        return total;
+    }
+
+    /** The index in the file PATH. */
+    PositionIndex(Path path) throws IOException {
+        _channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = _channel.size();
+        if (size < HEADER_SIZE) {
+            throw error("%s: not a position index", path);
+        }
+        int windows = (int) ((size - 1) / WINDOW_SIZE) + 1;
+        _windows = new MappedByteBuffer[windows];
+        for (int k = 0; k < windows; k += 1) {
+            long start = k * WINDOW_SIZE;
+            _windows[k] =
+                _channel.map(FileChannel.MapMode.READ_ONLY, start,
+                             Math.min(size - start, WINDOW_SIZE));
+        }
+        if (_windows[0].getInt(0) != MAGIC) {
+            throw error("%s: not a position index", path);
+        } else if (_windows[0].getInt(Integer.BYTES) != VERSION) {
+            throw error("%s: unsupported index version %d", path,
+                        _windows[0].getInt(Integer.BYTES));
+        }
+        _size = _windows[0].getLong(2 * Integer.BYTES);
+        if (_size < 0 || HEADER_SIZE + _size * ENTRY_SIZE != size) {
+            throw error("%s: damaged position index", path);
+        }
+    }
+
+    /** Return the number of entries. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the statistics of the games that reached the current
+     *  position of BOARD with the same side to move, as a list whose
+     *  first element totals the others, which are those of each move
+     *  played from the position, in decreasing order of the number of
+     *  games.  A game that reached the position more than once is counted
+     *  only once, at the first time. */
+    List<Continuation> explore(Board board) {
+        long key = board.key();
+        Continuation all = new Continuation(null);
+        Continuation[] byCode = new Continuation[END + 1];
+        int lastGame = -1;
+        for (long k = firstEntry(key);
+             k < _size && getLong(k * ENTRY_SIZE) == key; k += 1) {
+            int game = getInt(k * ENTRY_SIZE + Long.BYTES),
+                info = getInt(k * ENTRY_SIZE + Long.BYTES + Integer.BYTES);
+            if (game == lastGame) {
+                continue;
+            }
+            lastGame = game;
+            int next = info & END;
+            if (byCode[next] == null) {
+                byCode[next] = new Continuation(
+                    next == END ? null
+                    : Move.unpack(GameArchive.move(next)));
+            }
+            int result = (info >>> RESULT_SHIFT) & GameArchive.RESULT_MASK;
+            all.add(result);
+            byCode[next].add(result);
+        }
+        ArrayList<Continuation> stats = new ArrayList<>();
+        for (Continuation cont : byCode) {
+            if (cont != null) {
+                stats.add(cont);
+            }
+        }
+        stats.sort((c0, c1) -> c1.games() - c0.games());
+        stats.add(0, all);
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** The statistics of the games continuing from a position with a
+     *  particular move. */
+    static final class Continuation {
+
+        /** Statistics of games continuing with MOVE (null for games
+         *  that ended in the position). */
+        Continuation(Move move) {
+            _move = move;
+        }
+
+        /** Return the move played next, or null if the games ended. */
+        Move move() {
+            return _move;
+        }
+
+        /** Return the number of games. */
+        int games() {
+            return _games;
+        }
+
+        /** Return the number of games won by SIDE. */
+        int wins(Piece side) {
+            return side == WHITE ? _whiteWins
+                : side == BLACK ? _blackWins : 0;
+        }
+
+        /** Count one more game, with result RESULT, coded as in
+         *  GameArchive. */
+        private void add(int result) {
+            _games += 1;
+            if (result == 1) {
+                _whiteWins += 1;
+            } else if (result == 2) {
+                _blackWins += 1;
+            }
+        }
+
+        /** Return the number of games and the percentages won by each
+         *  side, as text. */
+        @Override
+        public String toString() {
+            return String.format("%6d games  White %5.1f%%  Black %5.1f%%",
+                                 _games, percent(_whiteWins),
+                                 percent(_blackWins));
+        }
+
+        /** Return N as a percentage of my games. */
+        private double percent(int n) {
+            return _games == 0 ? 0.0 : 100.0 * n / _games;
+        }
+
+        /** The move played next, or null. */
+        private final Move _move;
+        /** Numbers of games, and of those won by each side. */
+        private int _games, _whiteWins, _blackWins;
+    }
+
+    /** Return the number of the first entry whose key is not less than
+     *  KEY (as unsigned numbers). */
+    private long firstEntry(long key) {
+        long lo = 0, hi = _size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(getLong(mid * ENTRY_SIZE), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the int at offset P among the entries. */
+    private int getInt(long p) {
+        p += HEADER_SIZE;
+        int k = (int) (p / WINDOW_SIZE);
+        return _windows[k].getInt((int) (p - k * WINDOW_SIZE));
+    }
+
+    /** Return the long at offset P among the entries. */
+    private long getLong(long p) {
+        p += HEADER_SIZE;
+        int k = (int) (p / WINDOW_SIZE);
+        return _windows[k].getLong((int) (p - k * WINDOW_SIZE));
+    }
+
+    /** Sort KEYS[0 .. COUNT-1] into increasing order as unsigned numbers,
+     *  permuting VALUES[0 .. COUNT-1] in the same way, and keeping equal
+     *  keys in their original order. */
+    private static void sort(long[] keys, long[] values, int count) {
+        long[] keys1 = new long[count], values1 = new long[count];
+        int[] starts = new int[(1 << RADIX_BITS) + 1];
+        int mask = (1 << RADIX_BITS) - 1;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(starts, 0);
+            for (int k = 0; k < count; k += 1) {
+                starts[(int) (keys[k] >>> shift) & mask] += 1;
+            }
+            for (int d = 0, start = 0; d < starts.length; d += 1) {
+                int n = starts[d];
+                starts[d] = start;
+                start += n;
+            }
+            for (int k = 0; k < count; k += 1) {
+                int d = (int) (keys[k] >>> shift) & mask;
+                keys1[starts[d]] = keys[k];
+                values1[starts[d]] = values[k];
+                starts[d] += 1;
+            }
+            System.arraycopy(keys1, 0, keys, 0, count);
+            System.arraycopy(values1, 0, values, 0, count);
+        }
+    }
+
+    /** Return a channel writing the file PATH, which is created or
+     *  emptied. */
+    private static FileChannel create(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /** Write the entries KEYS[0 .. COUNT-1] and VALUES[0 .. COUNT-1] to
+     *  a new temporary file in the directory of the index PATH, and
+     *  return the file. */
+    private static Path writeRun(long[] keys, long[] values, int count,
+                                 Path path) throws IOException {
+        Path file = Files.createTempFile(path.toAbsolutePath().getParent(),
+                                         "tablut", ".run");
+        try (FileChannel out = create(file)) {
+            write(out, ByteBuffer.allocate(BUFFER_SIZE), keys, values, count);
+        }
+        return file;
+    }
+
+    /** Write the index PATH of the TOTAL entries in the sorted RUNS, each
+     *  a file of entries, merging them.  Equal keys are taken from
+     *  earlier runs first, which hold earlier games. */
+    private static void merge(List<Path> runs, Path path, long total)
+        throws IOException {
+        ArrayList<Run> readers = new ArrayList<>();
+        try (FileChannel out = create(path)) {
+            PriorityQueue<Run> queue = new PriorityQueue<>();
+            for (int k = 0; k < runs.size(); k += 1) {
+                Run reader = new Run(k, runs.get(k));
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(total);
+            while (!queue.isEmpty()) {
+                Run reader = queue.poll();
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    write(out, buffer);
+                }
+                buffer.putLong(reader._key).putLong(reader._value);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            write(out, buffer);
+        } finally {
+            for (Run reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /** A reader of the entries of a sorted run written by build. */
+    private static final class Run implements Comparable<Run>, Closeable {
+
+        /** A reader of the run in the file PATH, which is the NUMBERth
+         *  written. */
+        Run(int number, Path path) throws IOException {
+            _number = number;
+            _remaining = Files.size(path) / ENTRY_SIZE;
+            _in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path), BUFFER_SIZE));
+        }
+
+        /** Read the next entry into _key and _value and return true, or
+         *  return false if there is none. */
+        boolean next() throws IOException {
+            if (_remaining == 0) {
+                return false;
+            }
+            _remaining -= 1;
+            _key = _in.readLong();
+            _value = _in.readLong();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            int cmp = Long.compareUnsigned(_key, other._key);
+            return cmp != 0 ? cmp : Integer.compare(_number, other._number);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** Position of the run among those written. */
+        private final int _number;
+        /** The file of the run. */
+        private final DataInputStream _in;
+        /** Number of entries not yet read. */
+        private long _remaining;
+        /** The last entry read. */
+        private long _key, _value;
+    }
+
+    /** Add the entries KEYS[0 .. COUNT-1] and VALUES[0 .. COUNT-1] to
+     *  BUFFER, writing it to OUT whenever it fills and at the end. */
+    private static void write(FileChannel out, ByteBuffer buffer,
+                              long[] keys, long[] values, int count)
+        throws IOException {
+        for (int k = 0; k < count; k += 1) {
+            if (buffer.remaining() < ENTRY_SIZE) {
+                write(out, buffer);
+            }
+            buffer.putLong(keys[k]).putLong(values[k]);
+        }
+        write(out, buffer);
+    }
+
+    /** Write the contents of BUFFER to OUT, and clear it. */
+    private static void write(FileChannel out, ByteBuffer buffer)
+        throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** The file of the index. */
+    private final FileChannel _channel;
+    /** The file mapped in windows: _windows[k] starts at offset
+     *  k * WINDOW_SIZE.  Entries lie within a window, since the header
+     *  and window sizes are multiples of the entry size. */
+    private final MappedByteBuffer[] _windows;
+    /** Number of entries. */
+    private final long _size;
+}
@@ -0,0 +1,137 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of position indices.
+ *  @author Philipp
+ */
+public class PositionIndexTest {
+
+    /** The statistics of positions agree with those counted directly
+     *  from the games, and an index merged from many sorted runs is the
+     *  same as one sorted at once. */
+    @Test
+    public void explore() throws IOException {
+        Random rand = new Random(SEED);
+        Path archiveFile = Files.createTempFile("tablut", ".tba"),
+            indexFile = Files.createTempFile("tablut", ".tbi"),
+            mergedFile = Files.createTempFile("tablut", ".tbi");
+        GameRecord[] games = new GameRecord[GAMES];
+        int positions = 0;
+        try {
+            try (GameArchiveWriter writer =
+                     new GameArchiveWriter(archiveFile)) {
+                for (int k = 0; k < GAMES; k += 1) {
+                    games[k] = randomGame(rand);
+                    positions += games[k].moves().size() + 1;
+                    writer.write(games[k]);
+                }
+            }
+            try (GameArchive archive = new GameArchive(archiveFile)) {
+                assertEquals(positions,
+                             PositionIndex.build(archive, indexFile));
+                assertEquals(positions,
+                             PositionIndex.build(archive, mergedFile,
+                                                 SMALL_RUN));
+            }
+            assertArrayEquals(Files.readAllBytes(indexFile),
+                              Files.readAllBytes(mergedFile));
+            try (PositionIndex index = new PositionIndex(indexFile)) {
+                assertEquals(positions, index.size());
+                checkPosition(index, games, 0);
+                checkPosition(index, games, 1);
+                checkPosition(index, games, 2);
+                Board board = games[0].startingBoard();
+                IntMoveList moves = games[0].moves();
+                for (int k = 0; k < moves.size(); k += 1) {
+                    board.makeMove(moves.get(k));
+                }
+                List<PositionIndex.Continuation> stats =
+                    index.explore(board);
+                assertEquals(1, stats.get(0).games());
+                assertNull(stats.get(1).move());
+                board.setTurn(board.turn().opponent());
+                assertEquals(0, index.explore(board).get(0).games());
+            }
+        } finally {
+            Files.delete(archiveFile);
+            Files.delete(indexFile);
+            Files.delete(mergedFile);
+        }
+    }
+
+    /** Check the statistics in INDEX of the position after the first
+     *  PLY moves of the first of GAMES, counting the games that reach
+     *  it directly. */
+    private static void checkPosition(PositionIndex index,
+                                      GameRecord[] games, int ply) {
+        IntMoveList line = games[0].moves();
+        HashMap<Integer, Integer> counts = new HashMap<>();
+        int total, whiteWins;
+        total = whiteWins = 0;
+        for (GameRecord game : games) {
+            IntMoveList moves = game.moves();
+            boolean reached = moves.size() > ply;
+            for (int k = 0; reached && k < ply; k += 1) {
+                reached = moves.get(k) == line.get(k);
+            }
+            if (reached) {
+                total += 1;
+                whiteWins += game.result() == WHITE ? 1 : 0;
+                counts.merge(moves.get(ply), 1, Integer::sum);
+            }
+        }
+        Board board = games[0].startingBoard();
+        for (int k = 0; k < ply; k += 1) {
+            board.makeMove(line.get(k));
+        }
+        List<PositionIndex.Continuation> stats = index.explore(board);
+        assertEquals(total, stats.get(0).games());
+        assertEquals(whiteWins, stats.get(0).wins(WHITE));
+        assertEquals(counts.size() + 1, stats.size());
+        for (int k = 1; k < stats.size(); k += 1) {
+            PositionIndex.Continuation cont = stats.get(k);
+            assertEquals((int) counts.get(cont.move().pack()), cont.games());
+            if (k > 1) {
+                assertTrue(cont.games() <= stats.get(k - 1).games());
+            }
+        }
+    }
+
+    /** Return a random finished game from the initial position, whose
+     *  first moves are chosen from a few, using RAND. */
+    private static GameRecord randomGame(Random rand) {
+        Board b = new Board();
+        while (b.winner() == null) {
+            List<Move> moves = b.legalMoves(b.turn());
+            int n = b.moveCount() < 2 ? OPENINGS : moves.size();
+            b.makeMove(moves.get(rand.nextInt(n)));
+        }
+        GameRecord game = new GameRecord();
+        game.setGame(b);
+        return game;
+    }
+
+    /** Seed of the random games. */
+    private static final long SEED = 44;
+
+    /** Number of random games. */
+    private static final int GAMES = 40;
+
+    /** Number of entries in each run of the index built by merging. */
+    private static final int SMALL_RUN = 100;
+
+    /** Number of moves among which the first two of each game are
+     *  chosen. */
+    private static final int OPENINGS = 3;
+}
@@ -0,0 +1,249 @@
+package tablut;
+
+import java.util.ArrayList;
+
+import static tablut.Board.*;
+import static tablut.Piece.*;
+import static tablut.Square.*;
+
+/** A second implementation of the rules of Board, written to be as
+ *  plain as possible rather than fast, against which BoardFuzzer checks
+ *  Board.  Pieces are kept in a two-dimensional array, moves and
+ *  captures are found by walking from square to square, and a position
+ *  is recognized as repeated by comparing it with every earlier position
+ *  of the game.  It shares nothing with Board but the description of
+ *  the initial position and the throne, and it follows Board's rules in
+ *  every detail that is visible to a caller, including those that are
+ *  accidents of Board's implementation (noted below).
+ *  @author Philipp
+ */
+class ReferenceBoard {
+
+    /** Number of black pieces next to the occupied throne that make it
+     *  hostile to White. */
+    static final int BLACK_HOSTILE_THRONE = 3;
+
+    /** A board in the initial position. */
+    ReferenceBoard() {
+        for (Square sq : SQUARE_LIST) {
+            set(sq, EMPTY);
+        }
+        for (Square sq : INITIAL_ATTACKERS) {
+            set(sq, BLACK);
+        }
+        for (Square sq : INITIAL_DEFENDERS) {
+            set(sq, WHITE);
+        }
+        set(THRONE, KING);
+        _turn = BLACK;
+        _positions.add(placement());
+    }
+
+    /** A board holding the position ENCODED, in the format produced by
+     *  Board.encodedBoard(), which is assumed to be valid. */
+    ReferenceBoard(String encoded) {
+        for (Square sq : SQUARE_LIST) {
+            set(sq, pieceOf(encoded.charAt(sq.index() + 1)));
+        }
+        _turn = pieceOf(encoded.charAt(0));
+        _positions.add(placement());
+    }
+
+    /** Set the move limit to LIM, as for Board.setMoveLimit. */
+    void setMoveLimit(int lim) {
+        _moveLimit = lim;
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _turn;
+    }
+
+    /** Return the winner, or null if there is none yet. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return true iff the last move repeated a position. */
+    boolean repeatedPosition() {
+        return _repeated;
+    }
+
+    /** Return the number of moves made and not undone. */
+    int moveCount() {
+        return _undo.size();
+    }
+
+    /** Return the contents of SQ. */
+    Piece get(Square sq) {
+        return _squares[sq.col()][sq.row()];
+    }
+
+    /** Return the position, as for Board.encodedBoard(). */
+    String encodedBoard() {
+        return _turn + placement();
+    }
+
+    /** Return the packed forms (see Move.pack) of the legal moves of
+     *  SIDE, in no particular order.  As in Board, the king's moves are
+     *  included only while the game is undecided and White is to move. */
+    IntMoveList legalMoves(Piece side) {
+        IntMoveList moves = new IntMoveList();
+        for (Square from : SQUARE_LIST) {
+            Piece piece = get(from);
+            if (piece.side() != side
+                || (piece == KING && (_winner != null || _turn != WHITE))) {
+                continue;
+            }
+            for (int dir = 0; dir < 4; dir += 1) {
+                for (int steps = 1; true; steps += 1) {
+                    Square to = from.rookMove(dir, steps);
+                    if (to == null || get(to) != EMPTY
+                        || (to == THRONE && piece != KING)) {
+                        break;
+                    }
+                    moves.add(Move.pack(from.index(), to.index()));
+                }
+            }
+        }
+        return moves;
+    }
+
+    /** Make the packed move MOVE, which is assumed to be legal. */
+    void makeMove(int move) {
+        Square from = sq(Move.from(move)), to = sq(Move.to(move));
+        _undo.add(encodedBoard());
+        Piece mover = _turn, piece = get(from);
+        set(to, piece);
+        set(from, EMPTY);
+        /* As in Board, repetition is judged before captures are made. */
+        if (_positions.contains(placement())) {
+            _winner = mover.opponent();
+            _repeated = true;
+        }
+        _turn = mover.opponent();
+        ArrayList<Square> captured = new ArrayList<>();
+        for (int dir = 0; dir < 4; dir += 1) {
+            Square victim = to.rookMove(dir, 1),
+                partner = to.rookMove(dir, 2);
+            if (partner != null && isCaptured(victim, partner, mover)) {
+                captured.add(victim);
+            }
+        }
+        for (Square sq : captured) {
+            set(sq, EMPTY);
+        }
+        _positions.add(placement());
+
+        if (moveCount() / 2 >= _moveLimit) {
+            _winner = mover;
+        } else if (piece == KING && to.isEdge()) {
+            _winner = WHITE;
+        } else if (!placement().contains(KING.toString())) {
+            _winner = BLACK;
+        } else if (legalMoves(WHITE).isEmpty()) {
+            /* As in Board, the king's moves are not counted here unless
+             * White is to move. */
+            _winner = BLACK;
+        } else if (legalMoves(BLACK).isEmpty()) {
+            _winner = WHITE;
+        }
+    }
+
+    /** Undo the last move, if any. */
+    void undo() {
+        if (_undo.isEmpty()) {
+            return;
+        }
+        String previous = _undo.remove(_undo.size() - 1);
+        for (Square sq : SQUARE_LIST) {
+            set(sq, pieceOf(previous.charAt(sq.index() + 1)));
+        }
+        _turn = pieceOf(previous.charAt(0));
+        _positions.remove(_positions.size() - 1);
+        _winner = null;
+        _repeated = false;
+    }
+
+    /** Return true iff the piece on VICTIM is captured by a piece of
+     *  MOVER that has just moved next to it, on the far side from
+     *  PARTNER. */
+    boolean isCaptured(Square victim, Square partner, Piece mover) {
+        Piece piece = get(victim);
+        if (piece == EMPTY || piece.side() == mover) {
+            return false;
+        } else if (piece == KING
+                   && (victim == THRONE
+                       || SURROUNDING_THRONE.contains(victim))) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                if (!isHostile(victim.rookMove(dir, 1), mover)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return isHostile(partner, mover);
+        }
+    }
+
+    /** Return true iff SQ is hostile to the enemies of MOVER: it holds a
+     *  piece of MOVER, or it is the throne, which is hostile to both
+     *  sides when empty, and to White when the king is on it with three
+     *  or more black pieces next to it (BLACK_HOSTILE_THRONE). */
+    boolean isHostile(Square sq, Piece mover) {
+        if (get(sq).side() == mover) {
+            return true;
+        } else if (sq != THRONE) {
+            return false;
+        } else if (get(THRONE) == EMPTY) {
+            return true;
+        }
+        int black = 0;
+        for (Square near : SURROUNDING_THRONE) {
+            if (get(near) == BLACK) {
+                black += 1;
+            }
+        }
+        return mover == BLACK && black >= BLACK_HOSTILE_THRONE;
+    }
+
+    /** Return the pieces on the board, in the format of all but the first
+     *  character of Board.encodedBoard(). */
+    private String placement() {
+        StringBuilder result = new StringBuilder();
+        for (Square sq : SQUARE_LIST) {
+            result.append(get(sq));
+        }
+        return result.toString();
+    }
+
+    /** Set the contents of SQ to PIECE. */
+    private void set(Square sq, Piece piece) {
+        _squares[sq.col()][sq.row()] = piece;
+    }
+
+    /** Return the Piece whose symbol is C. */
+    private static Piece pieceOf(char c) {
+        for (Piece p : Piece.values()) {
+            if (p.toString().charAt(0) == Character.toUpperCase(c)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("bad piece: " + c);
+    }
+
+    /** The contents of the squares, indexed by column and row. */
+    private final Piece[][] _squares = new Piece[SIZE][SIZE];
+    /** The side to move. */
+    private Piece _turn;
+    /** The winner, or null. */
+    private Piece _winner;
+    /** True iff the last move repeated a position. */
+    private boolean _repeated;
+    /** The move limit. */
+    private int _moveLimit = Integer.MAX_VALUE;
+    /** The positions of the game from the start, as by placement(). */
+    private final ArrayList<String> _positions = new ArrayList<>();
+    /** The position before each move made, as by encodedBoard(). */
+    private final ArrayList<String> _undo = new ArrayList<>();
+}
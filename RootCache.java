@@ -0,0 +1,191 @@
+package tablut;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of the results of completed root searches, shared by
+ *  all the games of a program, so that a position reached in several
+ *  games (such as those soon after the initial position) is searched
+ *  only once.  Each entry holds the depth searched, the best move, and
+ *  its score.  When the cache is full, the least recently used entry is
+ *  discarded, so that its size never exceeds its capacity.
+ *
+ *  Positions are identified by their keys (see Board.key), combined
+ *  with the number of moves left before the move limit, if there is
+ *  one.  Results depend on the earlier positions of a game only through
+ *  repetitions, so a cached move is not used if it would repeat a
+ *  position of the current game.  Results found with one seed are used
+ *  by searches with any other, which differ only in the breaking of near
+ *  ties.  The cache may be used by several threads at once.
+ *  @author Philipp
+ */
+final class RootCache {
+
+    /** Default capacity, in entries. */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Multiplier that spreads the number of moves left over a key. */
+    private static final long KEY_MIX = 0x9E3779B97F4A7C15L;
+
+    /** Load factor of the table of entries. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** A cache holding at most CAPACITY results (CAPACITY > 0). */
+    RootCache(int capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(capacity / 2, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Result> e) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Return the result of a search for the best move for the side to
+     *  move on BOARD at least as deep as LIMITS call for, or null if there
+     *  is none.  Searches bounded by time or nodes are not answered from
+     *  the cache, since their depth is not known in advance.  BOARD is
+     *  used, but is restored on return. */
+    Result find(Board board, SearchLimits limits) {
+        if (limits.nodes() != 0 || limits.millis() != 0) {
+            return null;
+        }
+        int depth =
+            limits.depth() > 0 ? limits.depth() : Search.defaultDepth(board);
+        Result result;
+        synchronized (this) {
+            result = _entries.get(key(board));
+            if (result == null || result._depth < depth) {
+                _misses += 1;
+                return null;
+            }
+        }
+        if (!board.isLegal(result._move)) {
+            synchronized (this) {
+                _misses += 1;
+            }
+            return null;
+        }
+        board.makeMove(result._move);
+        boolean repeated = board.repeatedPosition();
+        board.undo();
+        synchronized (this) {
+            if (repeated) {
+                _misses += 1;
+                return null;
+            }
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Record that MOVE, with value SCORE for the side to move, is the
+     *  best move on BOARD found by a search of DEPTH plies, unless a
+     *  deeper result is already recorded. */
+    synchronized void put(Board board, int depth, Move move, int score) {
+        if (move == null || depth <= 0) {
+            return;
+        }
+        long key = key(board);
+        Result old = _entries.get(key);
+        if (old == null || old._depth <= depth) {
+            _entries.put(key, new Result(depth, move.pack(), score));
+        }
+    }
+
+    /** Remove all entries, and reset the counts. */
+    synchronized void clear() {
+        _entries.clear();
+        _hits = _misses = _evictions = 0;
+    }
+
+    /** Return the number of entries. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the number of calls to find that returned a result. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to find that returned null, other than
+     *  for searches bounded by time or nodes. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries discarded to make room for others. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = _hits + _misses;
+        return String.format("cache %d/%d entries, %d hits, %d misses"
+                             + " (%.1f%%), %d evictions",
+                             _entries.size(), _capacity, _hits, _misses,
+                             lookups == 0 ? 0.0 : 100.0 * _hits / lookups,
+                             _evictions);
+    }
+
+    /** Return the key of the entry for BOARD. */
+    private static long key(Board board) {
+        long key = board.key();
+        if (board.moveLimit() != Integer.MAX_VALUE) {
+            key ^= KEY_MIX * (2 * board.moveLimit() - board.moveCount());
+        }
+        return key;
+    }
+
+    /** The result of a root search. */
+    static final class Result {
+
+        /** The result of a search of DEPTH plies, which found the packed
+         *  move MOVE with value SCORE. */
+        private Result(int depth, int move, int score) {
+            _depth = depth;
+            _move = move;
+            _score = score;
+        }
+
+        /** Return the depth of the search. */
+        int depth() {
+            return _depth;
+        }
+
+        /** Return the best move. */
+        Move move() {
+            return Move.unpack(_move);
+        }
+
+        /** Return the value of the best move for the side to move. */
+        int score() {
+            return _score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cached depth %d score %d", _depth, _score);
+        }
+
+        /** Depth of the search. */
+        private final int _depth;
+        /** Best move, packed. */
+        private final int _move;
+        /** Value of the best move for the side to move. */
+        private final int _score;
+    }
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+    /** The entries, by key, from least to most recently used. */
+    private final LinkedHashMap<Long, Result> _entries;
+    /** Numbers of hits, misses, and evictions. */
+    private long _hits, _misses, _evictions;
+}
@@ -0,0 +1,99 @@
+package tablut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the cache of root search results.
+ *  @author Philipp
+ */
+public class RootCacheTest {
+
+    /** Results are found for positions searched deeply enough, and not
+     *  for others. */
+    @Test
+    public void findAndPut() {
+        RootCache cache = new RootCache(CAPACITY);
+        Board board = new Board();
+        SearchLimits limits = SearchLimits.DEFAULT.withDepth(2);
+        assertNull(cache.find(board, limits));
+        cache.put(board, 2, Move.mv("d1-c"), SCORE);
+        RootCache.Result result = cache.find(board, limits);
+        assertEquals(Move.mv("d1-c"), result.move());
+        assertEquals(SCORE, result.score());
+        assertNull(cache.find(board, limits.withDepth(3)));
+        assertNull(cache.find(board, limits.withMillis(1)));
+        cache.put(board, 1, Move.mv("d1-b"), SCORE);
+        assertEquals(Move.mv("d1-c"), cache.find(board, limits).move());
+        board.setMoveLimit(MOVE_LIMIT);
+        assertNull(cache.find(board, limits));
+        assertEquals(2, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    /** The same position under different move limits has separate
+     *  entries, including when looked up through a copy of the board, as
+     *  AI does. */
+    @Test
+    public void moveLimits() {
+        RootCache cache = new RootCache(CAPACITY);
+        SearchLimits limits = SearchLimits.DEFAULT.withDepth(1);
+        Board limited = new Board(), unlimited = new Board();
+        limited.setMoveLimit(MOVE_LIMIT);
+        cache.put(new Board(limited), 1, Move.mv("d1-c"), SCORE);
+        cache.put(new Board(unlimited), 1, Move.mv("d1-b"), SCORE);
+        assertEquals(2, cache.size());
+        assertEquals(Move.mv("d1-c"),
+                     cache.find(new Board(limited), limits).move());
+        assertEquals(Move.mv("d1-b"),
+                     cache.find(new Board(unlimited), limits).move());
+        limited.setMoveLimit(MOVE_LIMIT + 1);
+        assertNull(cache.find(new Board(limited), limits));
+    }
+
+    /** A cached move that would repeat a position of the game is not
+     *  used. */
+    @Test
+    public void repetition() {
+        RootCache cache = new RootCache(CAPACITY);
+        SearchLimits limits = SearchLimits.DEFAULT.withDepth(1);
+        Board b0 = new Board(), b1 = new Board();
+        for (String move : new String[] { "a4-b", "e3-f", "d1-c", "f3-e" }) {
+            b0.makeMove(Move.mv(move));
+        }
+        for (String move : new String[] { "d1-c", "e3-f", "a4-b", "f3-e" }) {
+            b1.makeMove(Move.mv(move));
+        }
+        assertEquals(b0.key(), b1.key());
+        cache.put(b0, 1, Move.mv("b4-a"), SCORE);
+        assertNotNull(cache.find(b0, limits));
+        assertNull(cache.find(b1, limits));
+    }
+
+    /** The least recently used entries are evicted first. */
+    @Test
+    public void eviction() {
+        RootCache cache = new RootCache(2);
+        SearchLimits limits = SearchLimits.DEFAULT.withDepth(1);
+        Board b0 = new Board(), b1 = new Board(), b2 = new Board();
+        b1.makeMove(Move.mv("d1-c"));
+        b2.makeMove(Move.mv("d1-b"));
+        cache.put(b0, 1, Move.mv("d1-c"), 0);
+        cache.put(b1, 1, Move.mv("e3-f"), 0);
+        assertNotNull(cache.find(b0, limits));
+        cache.put(b2, 1, Move.mv("e3-f"), 0);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertNotNull(cache.find(b0, limits));
+        assertNull(cache.find(b1, limits));
+        assertNotNull(cache.find(b2, limits));
+    }
+
+    /** Capacity of the caches tested. */
+    private static final int CAPACITY = 16;
+
+    /** Score recorded in tests. */
+    private static final int SCORE = 42;
+
+    /** Move limit of a board in tests. */
+    private static final int MOVE_LIMIT = 30;
+}
@@ -0,0 +1,490 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static tablut.Piece.*;
+
+/** An iterative-deepening alpha-beta search for Tablut.  A Search finds
+ *  one move, or the best few moves, within the bounds given by a
+ *  SearchLimits, and may be stopped from another thread at any time by
+ *  stop(), in which case it returns the result of the deepest completed
+ *  iteration.  Results are cached in a TranspositionTable, which may be
+ *  shared by several searches.
+ *  @author Philipp
+ */
+class Search {
+
+    /** Version of the evaluation and of the meaning of the scores
+     *  stored in transposition tables.  It must change whenever either
+     *  changes, so that tables saved by older versions are not loaded. */
+    static final int VERSION = 1;
+
+    /** A position-score magnitude indicating a win (for white if positive,
+     *  black if negative). */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
+    /** A position-score magnitude indicating a forced win in a subsequent
+     *  move.  This differs from WINNING_VALUE to avoid putting off wins. */
+    static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+
+    /** A position-score magnitude for each white piece. */
+    private static final int WHITE_PIECE_VALUE = 300;
+
+    /** A position-score magnitude for each black piece. */
+    private static final int BLACK_PIECE_VALUE = 250;
+
+    /** White close-to-win-value. */
+    private static final int WHITE_CLOSE_TO_WIN = 10000;
+
+    /** Black close-to-win-value. */
+    private static final int BLACK_CLOSE_TO_WIN = 5000;
+
+    /** Random score to add to static score. */
+    private static final int RANDOM_ADDED_SCORE = 5;
+
+    /** Mask selecting the low-order 32 bits of a long. */
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    /** A magnitude greater than a normal value. */
+    static final int INFTY = Integer.MAX_VALUE;
+
+    /** A depth beyond the reach of any search, used for searches that
+     *  run until stopped. */
+    static final int MAX_DEPTH = 100;
+
+    /** Search depth used when the limits leave it open. */
+    private static final int DEFAULT_DEPTH = 2;
+
+    /** Piece count below which the default depth is increased. */
+    private static final int NUM_PCS_TO_INC = 20;
+
+    /** The clock is read once per this many nodes (a power of 2). */
+    private static final int TIME_CHECK_INTERVAL = 1024;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    /** Number of moves by which a principal variation may extend beyond
+     *  the search depth (following table entries). */
+    private static final int PV_EXTENSION = 4;
+
+    /** A new search whose evaluation noise is determined by SEED, using
+     *  the transposition table TABLE. */
+    Search(long seed, TranspositionTable table) {
+        _seed = Zobrist.mix(seed);
+        _table = table;
+    }
+
+    /** Return a move for the side to move on BOARD within LIMITS, or null
+     *  if there is none.  BOARD is used for the search, but is restored
+     *  on return. */
+    Move findMove(Board board, SearchLimits limits) {
+        List<Variation> lines = analyze(board, 1, limits);
+        return lines.isEmpty() ? null : lines.get(0).move();
+    }
+
+    /** Return the best COUNT moves for the side to move on BOARD, searched
+     *  within LIMITS, best first, each with its exact value and principal
+     *  variation.  Returns fewer lines if there are fewer legal moves.
+     *  BOARD is used for the search, but is restored on return.  If the
+     *  search is cut short, the lines of the deepest completed iteration
+     *  are returned, updated with any lines completed since. */
+    List<Variation> analyze(Board board, int count, SearchLimits limits) {
+        IntMoveList moves = new IntMoveList();
+        board.legalMoves(board.turn(), moves);
+        int sym = board.canonicalTransform();
+        moves.moveToFront(Symmetry.untransform(
+            TranspositionTable.move(_table.probe(board.symmetricKey(sym))),
+            sym));
+        int maxDepth =
+            limits.depth() > 0 ? limits.depth() : defaultDepth(board);
+        _nodeLimit = limits.nodes();
+        _deadline = limits.millis() == 0 ? 0
+            : System.nanoTime() + limits.millis() * NANOS_PER_MS;
+        _aborted = false;
+        _stats.start();
+        List<Variation> result = new ArrayList<>();
+        IntMoveList remaining = new IntMoveList();
+        for (int depth = 1; depth <= maxDepth && !moves.isEmpty();
+             depth += 1) {
+            List<Variation> lines = new ArrayList<>();
+            remaining.copy(moves);
+            while (lines.size() < count && !remaining.isEmpty()) {
+                int best = searchRoot(board, remaining, depth,
+                                      lines.isEmpty());
+                if (best != Move.NONE) {
+                    lines.add(variation(board, best, _score, depth));
+                    remaining.remove(remaining.indexOf(best));
+                }
+                if (_aborted) {
+                    break;
+                }
+            }
+            lines.sort((x, y) -> Integer.compare(y.score(), x.score()));
+            result = merge(lines, result, count);
+            if (_aborted) {
+                break;
+            }
+            _stats.reachedDepth(depth);
+            if (_listener != null) {
+                _listener.accept(result);
+            }
+            for (int k = result.size() - 1; k >= 0; k -= 1) {
+                moves.moveToFront(result.get(k).move().pack());
+            }
+            if (decided(result)) {
+                break;
+            }
+        }
+        if (result.isEmpty() && !moves.isEmpty()) {
+            result.add(new Variation(0, 0,
+                                     List.of(Move.unpack(moves.get(0)))));
+        }
+        _stats.stop();
+        return result;
+    }
+
+    /** Return the first COUNT of NEWER, followed by those of OLDER whose
+     *  moves are not in NEWER. */
+    private static List<Variation> merge(List<Variation> newer,
+                                         List<Variation> older, int count) {
+        List<Variation> result = new ArrayList<>(newer);
+        for (Variation line : older) {
+            boolean present = false;
+            for (Variation other : newer) {
+                present |= other.move() == line.move();
+            }
+            if (!present && result.size() < count) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff every line in LINES leads to a forced result. */
+    private static boolean decided(List<Variation> lines) {
+        for (Variation line : lines) {
+            if (Math.abs(line.score()) <= WILL_WIN_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Search MOVES from BOARD to DEPTH plies and return the best, or
+     *  Move.NONE if the search was aborted before any move was fully
+     *  searched.  Sets _score to the value of the best move for the side
+     *  to move.  Records the result in the table iff STORE. */
+    private int searchRoot(Board board, IntMoveList moves, int depth,
+                           boolean store) {
+        _stats.countNode();
+        Piece side = board.turn();
+        int alpha = -INFTY;
+        int best = Move.NONE;
+        for (int k = 0; k < moves.size(); k += 1) {
+            int move = moves.get(k);
+            int score = searchMove(board, move, side, depth, 0,
+                                   alpha, INFTY);
+            if (_aborted) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                best = move;
+            }
+        }
+        if (best != Move.NONE) {
+            _score = alpha;
+            if (store && !_aborted) {
+                int sym = board.canonicalTransform();
+                _table.store(board.symmetricKey(sym), depth,
+                             TranspositionTable.EXACT, alpha,
+                             Symmetry.transform(best, sym));
+            }
+        }
+        return best;
+    }
+
+    /** Return the variation of value SCORE and depth DEPTH that starts
+     *  with MOVE from BOARD and continues with the best moves recorded in
+     *  the table. */
+    private Variation variation(Board board, int move, int score,
+                                int depth) {
+        List<Move> pv = new Move.MoveList();
+        pv.add(Move.unpack(move));
+        board.makeMove(move);
+        while (board.winner() == null && pv.size() < depth + PV_EXTENSION) {
+            int sym = board.canonicalTransform();
+            long entry = _table.probe(board.symmetricKey(sym));
+            int next =
+                Symmetry.untransform(TranspositionTable.move(entry), sym);
+            if (next == Move.NONE || !board.isLegal(next)) {
+                break;
+            }
+            pv.add(Move.unpack(next));
+            board.makeMove(next);
+        }
+        for (int k = 0; k < pv.size(); k += 1) {
+            board.undo();
+        }
+        return new Variation(score, depth, pv);
+    }
+
+    /** Make MOVE for SIDE on BOARD at PLY plies from the root, and
+     *  return its value for SIDE searched to DEPTH plies (including
+     *  MOVE) with window ALPHA..BETA.  Restores BOARD. */
+    private int searchMove(Board board, int move, Piece side, int depth,
+                           int ply, int alpha, int beta) {
+        board.makeMove(move);
+        int score;
+        Piece winner = board.winner();
+        if (winner == null) {
+            score = -negamax(board, depth - 1, ply + 1, -beta, -alpha);
+        } else if (winner == side) {
+            score = WINNING_VALUE - ply;
+        } else {
+            score = -(WINNING_VALUE - ply);
+        }
+        board.undo();
+        return score;
+    }
+
+    /** Return the value of BOARD for the side to move, searched to DEPTH
+     *  plies with window ALPHA..BETA, PLY plies from the root.  The
+     *  result is meaningless if the search is aborted. */
+    private int negamax(Board board, int depth, int ply,
+                        int alpha, int beta) {
+        _stats.countNode();
+        if (checkAbort()) {
+            return 0;
+        }
+        int sym = board.canonicalTransform();
+        long key = board.symmetricKey(sym);
+        long entry = _table.probe(key);
+        _stats.countProbe(entry != 0);
+        int tableMove = Move.NONE;
+        if (entry != 0) {
+            tableMove =
+                Symmetry.untransform(TranspositionTable.move(entry), sym);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                switch (TranspositionTable.bound(entry)) {
+                case TranspositionTable.EXACT:
+                    return score;
+                case TranspositionTable.LOWER:
+                    if (score >= beta) {
+                        return score;
+                    }
+                    break;
+                default:
+                    if (score <= alpha) {
+                        return score;
+                    }
+                    break;
+                }
+            }
+        }
+        Piece side = board.turn();
+        int sense = side == WHITE ? 1 : -1;
+        IntMoveList moves = movesAt(ply);
+        moves.clear();
+        if (depth > 0) {
+            board.legalMoves(side, moves);
+        }
+        if (moves.isEmpty()) {
+            int score = sense * staticScore(board);
+            _table.store(key, 0, TranspositionTable.EXACT, score, Move.NONE);
+            return score;
+        }
+        moves.moveToFront(tableMove);
+        int alpha0 = alpha;
+        int best = -INFTY;
+        int bestMove = Move.NONE;
+        boolean first = true;
+        for (int k = 0; k < moves.size(); k += 1) {
+            int move = moves.get(k);
+            int score = searchMove(board, move, side, depth, ply,
+                                   alpha, beta);
+            if (_aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                alpha = Math.max(alpha, score);
+            }
+            if (alpha >= beta) {
+                _stats.countCutoff(first);
+                break;
+            }
+            first = false;
+        }
+        int bound = best <= alpha0 ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        _table.store(key, depth, bound, toTable(best, ply),
+                     Symmetry.transform(bestMove, sym));
+        return best;
+    }
+
+    /** Return the list used for the moves of nodes PLY plies from the
+     *  root, creating it if need be. */
+    private IntMoveList movesAt(int ply) {
+        while (_moveLists.size() <= ply) {
+            _moveLists.add(new IntMoveList());
+        }
+        return _moveLists.get(ply);
+    }
+
+    /** Return SCORE, found PLY plies from the root, in the form stored in
+     *  the table: distances to wins are counted from the position rather
+     *  than from the root. */
+    private static int toTable(int score, int ply) {
+        return score > WILL_WIN_VALUE ? score + ply
+            : score < -WILL_WIN_VALUE ? score - ply
+            : score;
+    }
+
+    /** Return the table score SCORE converted for use PLY plies from the
+     *  root (the inverse of toTable). */
+    private static int fromTable(int score, int ply) {
+        return score > WILL_WIN_VALUE ? score - ply
+            : score < -WILL_WIN_VALUE ? score + ply
+            : score;
+    }
+
+    /** Return true iff this search must stop now, because of stop() or
+     *  because a node or time bound has been reached. */
+    private boolean checkAbort() {
+        if (!_aborted) {
+            long nodes = _stats.nodes();
+            if (_stopped
+                || (_nodeLimit > 0 && nodes >= _nodeLimit)
+                || (_deadline != 0
+                    && (nodes & (TIME_CHECK_INTERVAL - 1)) == 0
+                    && System.nanoTime() >= _deadline)) {
+                _aborted = true;
+            }
+        }
+        return _aborted;
+    }
+
+    /** Arrange for LISTENER to be called with the current lines after
+     *  every completed iteration of analyze or findMove.  It is called on
+     *  the searching thread. */
+    void setListener(Consumer<List<Variation>> listener) {
+        _listener = listener;
+    }
+
+    /** Ask this search to stop as soon as possible.  May be called from
+     *  any thread, and before the search starts. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return true iff the last findMove ended early because of stop()
+     *  or a node or time bound. */
+    boolean aborted() {
+        return _aborted;
+    }
+
+    /** Return the value, for the side to move, of the move returned by
+     *  the last findMove. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the statistics of the current or last search. */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /** Return a heuristically determined search depth based on
+     *  characteristics of BOARD. */
+    static int defaultDepth(Board board) {
+        int pieceCount = board.pieceLocations(WHITE).size()
+            + board.pieceLocations(BLACK).size();
+        return pieceCount < NUM_PCS_TO_INC ? DEFAULT_DEPTH + 1
+            : DEFAULT_DEPTH;
+    }
+
+    /** Return a heuristic value for BOARD, positive values favoring
+     *  white. */
+    int staticScore(Board board) {
+        _stats.countLeaf();
+        int score = 0;
+        score += board.pieceLocations(WHITE).size() * WHITE_PIECE_VALUE;
+        score -= board.pieceLocations(BLACK).size() * BLACK_PIECE_VALUE;
+
+        Square kingPos = board.kingPosition();
+
+        Piece turn = board.turn();
+        board.setTurn(WHITE);
+        _whiteMoves.clear();
+        board.legalMoves(WHITE, _whiteMoves);
+        board.setTurn(turn);
+        int winningMoves = 0;
+        for (int k = 0; k < _whiteMoves.size(); k += 1) {
+            int m = _whiteMoves.get(k);
+            if (Move.isKingMove(m) && Square.sq(Move.to(m)).isEdge()) {
+                winningMoves += 1;
+            }
+        }
+        if (winningMoves >= 2) {
+            return WILL_WIN_VALUE;
+        } else if (winningMoves == 1) {
+            score += WHITE_CLOSE_TO_WIN;
+        }
+
+        int scoreAdd = 0;
+        for (int i = 0; i < 4; i++) {
+            if (board.get(kingPos.rookMove(i, 1)) == BLACK
+                    && kingPos != Board.THRONE) {
+                if (scoreAdd == 0) {
+                    scoreAdd = 1;
+                } else {
+                    scoreAdd *= 3;
+                }
+            }
+        }
+        score -= scoreAdd * BLACK_CLOSE_TO_WIN;
+
+        return score + jitter(board);
+    }
+
+    /** Return a small pseudo-random adjustment to the static score of
+     *  BOARD.  It has the distribution of the difference of two uniform
+     *  values in [0, RANDOM_ADDED_SCORE), but is a function only of the
+     *  position (up to symmetry) and the game seed, so searches are
+     *  reproducible and do not share a random-number generator. */
+    private int jitter(Board board) {
+        long h = Zobrist.mix(board.canonicalKey() ^ _seed);
+        return (int) Long.remainderUnsigned(h & INT_MASK, RANDOM_ADDED_SCORE)
+            - (int) Long.remainderUnsigned(h >>> Integer.SIZE,
+                                           RANDOM_ADDED_SCORE);
+    }
+
+    /** Game seed, scrambled, mixed into evaluation jitter. */
+    private final long _seed;
+    /** Transposition table, possibly shared with other searches. */
+    private final TranspositionTable _table;
+    /** Statistics of the current or last search. */
+    private final SearchStats _stats = new SearchStats();
+    /** Node bound of the current search, or 0. */
+    private long _nodeLimit;
+    /** Value of System.nanoTime() at which to stop, or 0. */
+    private long _deadline;
+    /** Called after each completed iteration, or null. */
+    private Consumer<List<Variation>> _listener;
+    /** Set by stop(). */
+    private volatile boolean _stopped;
+    /** True once the current search has been cut short. */
+    private boolean _aborted;
+    /** Value of the best move found by the last completed iteration. */
+    private int _score;
+    /** Move lists of the nodes on the current path, by ply. */
+    private final List<IntMoveList> _moveLists = new ArrayList<>();
+    /** Scratch list of White's moves for staticScore. */
+    private final IntMoveList _whiteMoves = new IntMoveList();
+}
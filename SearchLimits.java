@@ -0,0 +1,69 @@
+package tablut;
+
+/** Bounds on a game-tree search: a maximum depth, a maximum number of
+ *  nodes and a maximum time.  A value of 0 means "no bound" for nodes and
+ *  time, and "choose automatically" for depth.  SearchLimits are
+ *  immutable.
+ *  @author Philipp
+ */
+final class SearchLimits {
+
+    /** Limits with automatic depth and no node or time bound. */
+    static final SearchLimits DEFAULT = new SearchLimits(0, 0, 0);
+
+    /** Limits of at most DEPTH plies, NODES nodes and MILLIS
+     *  milliseconds. */
+    SearchLimits(int depth, long nodes, long millis) {
+        if (depth < 0 || nodes < 0 || millis < 0) {
+            throw Utils.error("search limits must be non-negative");
+        }
+        _depth = depth;
+        _nodes = nodes;
+        _millis = millis;
+    }
+
+    /** Return the maximum depth, or 0 if it is chosen automatically. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the maximum number of nodes, or 0 if unbounded. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the maximum time in milliseconds, or 0 if unbounded. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Return these limits with the depth replaced by DEPTH. */
+    SearchLimits withDepth(int depth) {
+        return new SearchLimits(depth, _nodes, _millis);
+    }
+
+    /** Return these limits with the node bound replaced by NODES. */
+    SearchLimits withNodes(long nodes) {
+        return new SearchLimits(_depth, nodes, _millis);
+    }
+
+    /** Return these limits with the time bound replaced by MILLIS. */
+    SearchLimits withMillis(long millis) {
+        return new SearchLimits(_depth, _nodes, millis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %s nodes %s time %s",
+                             _depth == 0 ? "auto" : _depth,
+                             _nodes == 0 ? "unlimited" : _nodes,
+                             _millis == 0 ? "unlimited" : _millis + " ms");
+    }
+
+    /** Maximum depth, or 0 for automatic. */
+    private final int _depth;
+    /** Maximum number of nodes, or 0. */
+    private final long _nodes;
+    /** Maximum time in milliseconds, or 0. */
+    private final long _millis;
+}
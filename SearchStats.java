@@ -0,0 +1,143 @@
+package tablut;
+
+/** Counters describing a single game-tree search: nodes visited, static
+ *  evaluations, beta cutoffs, transposition-table traffic and the depth
+ *  reached.  A SearchStats is filled in by one search at a time.
+ *  @author Philipp
+ */
+final class SearchStats {
+
+    /** Nanoseconds per second. */
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    /** Percentage multiplier. */
+    private static final double PERCENT = 100.0;
+
+    /** Reset all counters and start the clock. */
+    void start() {
+        _nodes = _leaves = _cutoffs = _firstMoveCutoffs = 0;
+        _probes = _hits = 0;
+        _depth = 0;
+        _elapsed = 0;
+        _start = System.nanoTime();
+    }
+
+    /** Stop the clock. */
+    void stop() {
+        _elapsed = System.nanoTime() - _start;
+    }
+
+    /** Count a node visited by the search. */
+    void countNode() {
+        _nodes += 1;
+    }
+
+    /** Count a static evaluation of a leaf. */
+    void countLeaf() {
+        _leaves += 1;
+    }
+
+    /** Count a beta cutoff, which happened on the first move searched
+     *  iff FIRST. */
+    void countCutoff(boolean first) {
+        _cutoffs += 1;
+        if (first) {
+            _firstMoveCutoffs += 1;
+        }
+    }
+
+    /** Count a transposition-table probe, which succeeded iff HIT. */
+    void countProbe(boolean hit) {
+        _probes += 1;
+        if (hit) {
+            _hits += 1;
+        }
+    }
+
+    /** Record that the search has completed DEPTH plies. */
+    void reachedDepth(int depth) {
+        _depth = Math.max(_depth, depth);
+    }
+
+    /** Return the number of nodes visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of static evaluations. */
+    long leaves() {
+        return _leaves;
+    }
+
+    /** Return the number of beta cutoffs. */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /** Return the fraction of cutoffs that happened on the first move
+     *  searched (0 if there were none). */
+    double firstMoveCutoffRate() {
+        return _cutoffs == 0 ? 0.0 : (double) _firstMoveCutoffs / _cutoffs;
+    }
+
+    /** Return the number of transposition-table probes. */
+    long probes() {
+        return _probes;
+    }
+
+    /** Return the number of successful transposition-table probes. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the fraction of table probes that hit (0 if none). */
+    double hitRate() {
+        return _probes == 0 ? 0.0 : (double) _hits / _probes;
+    }
+
+    /** Return the deepest completed search depth. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the elapsed time of the search in nanoseconds.  While the
+     *  search runs, this is the time since start(). */
+    long elapsedNanos() {
+        return _elapsed > 0 ? _elapsed : System.nanoTime() - _start;
+    }
+
+    /** Return the number of nodes searched per second. */
+    long nps() {
+        long elapsed = Math.max(1, elapsedNanos());
+        return _nodes * NANOS_PER_SECOND / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d nodes %d leaves %d nps %d"
+                             + " cutoffs %d (%.1f%% first)"
+                             + " table %d/%d (%.1f%%) time %d ms",
+                             _depth, _nodes, _leaves, nps(), _cutoffs,
+                             PERCENT * firstMoveCutoffRate(), _hits, _probes,
+                             PERCENT * hitRate(),
+                             elapsedNanos() / NANOS_PER_MS);
+    }
+
+    /** Nodes visited. */
+    private long _nodes;
+    /** Static evaluations performed. */
+    private long _leaves;
+    /** Beta cutoffs, in total and on the first move searched. */
+    private long _cutoffs, _firstMoveCutoffs;
+    /** Transposition-table probes and hits. */
+    private long _probes, _hits;
+    /** Deepest completed depth. */
+    private int _depth;
+    /** Value of System.nanoTime() at start(). */
+    private long _start;
+    /** Nanoseconds between start() and stop(), or 0 while running. */
+    private long _elapsed;
+}
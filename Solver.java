@@ -0,0 +1,353 @@
+package tablut;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/** A depth-first proof-number (df-pn) solver that proves or disproves
+ *  that the side to move can force a win within a given number of plies.
+ *  It uses its own fixed-size table of proof and disproof numbers, so its
+ *  memory use is bounded, and stops after a given number of nodes.
+ *
+ *  Proof and disproof numbers are kept from the point of view of the side
+ *  to move at each node: phi is the proof number of a win for that side
+ *  and delta the proof number of its loss.  A node's phi is the least
+ *  delta of its children, and its delta the sum of their phis.
+ *  @author Philipp
+ */
+final class Solver {
+
+    /** Results of solve. */
+    static final int PROVEN = 1, DISPROVEN = 2, UNKNOWN = 3;
+
+    /** Log2 of the default number of table entries. */
+    static final int DEFAULT_BITS = 20;
+
+    /** Default bound on the length of a win, in plies. */
+    static final int DEFAULT_PLIES = 9;
+
+    /** Default bound on the number of nodes. */
+    static final long DEFAULT_NODES = 100_000;
+
+    /** Stands for an infinite proof or disproof number. */
+    private static final int INF = Integer.MAX_VALUE / 4;
+
+    /** A solver with a table of 2**BITS entries that gives up after
+     *  NODELIMIT nodes. */
+    Solver(int bits, long nodeLimit) {
+        _keys = new long[1 << bits];
+        _phi = new int[1 << bits];
+        _delta = new int[1 << bits];
+        _mask = (1 << bits) - 1;
+        _nodeLimit = nodeLimit;
+    }
+
+    /** Try to prove that the side to move on BOARD can win within PLIES
+     *  plies, and return PROVEN, DISPROVEN, or UNKNOWN if the node limit
+     *  was reached or stop() was called first.  BOARD is restored on
+     *  return.  After a proof, line() and proofSize() describe it. */
+    int solve(Board board, int plies) {
+        _attacker = board.turn();
+        _nodes = 0;
+        _aborted = _stopped = false;
+        _line = new Move.MoveList();
+        _proofSize = 0;
+        _plies = plies;
+        _moveLists = new IntMoveList[plies + 1];
+        for (int k = 0; k <= plies; k += 1) {
+            _moveLists[k] = new IntMoveList();
+        }
+        _start = System.nanoTime();
+        if (board.winner() != null || plies <= 0) {
+            _elapsed = System.nanoTime() - _start;
+            return DISPROVEN;
+        }
+        mid(board, plies, nodeKey(board, plies), INF, INF);
+        int result;
+        if (_aborted) {
+            result = UNKNOWN;
+        } else if (lookup(nodeKey(board, plies)) && _foundPhi == 0) {
+            result = PROVEN;
+            extract(board);
+        } else {
+            result = DISPROVEN;
+        }
+        _elapsed = System.nanoTime() - _start;
+        return result;
+    }
+
+    /** Expand the node for BOARD, with REMAINING plies left and table key
+     *  KEY, until its phi reaches THPHI or its delta reaches THDELTA, and
+     *  record its proof numbers. */
+    private void mid(Board board, int remaining, long key,
+                     int thphi, int thdelta) {
+        _nodes += 1;
+        if (_nodes > _nodeLimit || _stopped) {
+            _aborted = true;
+            return;
+        }
+        IntMoveList moves = _moveLists[remaining];
+        moves.clear();
+        board.legalMoves(board.turn(), moves);
+        int n = moves.size();
+        long[] keys = new long[n];
+        int[] phis = new int[n], deltas = new int[n];
+        boolean[] fixed = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves.get(i));
+            Piece winner = board.winner();
+            if (winner != null) {
+                fixed[i] = true;
+                phis[i] = winner == board.turn() ? 0 : INF;
+            } else if (remaining == 1) {
+                fixed[i] = true;
+                phis[i] = board.turn() == _attacker ? INF : 0;
+            } else {
+                keys[i] = nodeKey(board, remaining - 1);
+            }
+            deltas[i] = INF - phis[i];
+            board.undo();
+        }
+        int phi, delta;
+        while (true) {
+            phi = INF;
+            delta = 0;
+            int best = -1, delta2 = INF;
+            for (int i = 0; i < n; i += 1) {
+                if (!fixed[i]) {
+                    if (lookup(keys[i])) {
+                        phis[i] = _foundPhi;
+                        deltas[i] = _foundDelta;
+                    } else {
+                        phis[i] = deltas[i] = 1;
+                    }
+                }
+                delta = Math.min(INF, delta + phis[i]);
+                if (best == -1 || deltas[i] < deltas[best]) {
+                    delta2 = best == -1 ? INF : deltas[best];
+                    best = i;
+                } else if (deltas[i] < delta2) {
+                    delta2 = deltas[i];
+                }
+            }
+            if (best != -1) {
+                phi = deltas[best];
+            }
+            if (best == -1 || phi >= thphi || delta >= thdelta || _aborted
+                || fixed[best]) {
+                break;
+            }
+            int childThPhi = (int) Math.min(INF, (long) thdelta
+                                            + phis[best] - delta);
+            int childThDelta = Math.min(thphi, delta2 + 1);
+            board.makeMove(moves.get(best));
+            mid(board, remaining - 1, keys[best], childThPhi, childThDelta);
+            board.undo();
+        }
+        if (!_aborted) {
+            store(key, phi, delta);
+        }
+    }
+
+    /** Return the table key for BOARD with REMAINING plies left. */
+    private long nodeKey(Board board, int remaining) {
+        return Zobrist.mix(board.key() + remaining);
+    }
+
+    /** If the table has an entry for KEY, set _foundPhi and _foundDelta
+     *  from it and return true.  Otherwise return false. */
+    private boolean lookup(long key) {
+        int i = (int) key & _mask;
+        if (_keys[i] != key) {
+            return false;
+        }
+        _foundPhi = _phi[i];
+        _foundDelta = _delta[i];
+        return true;
+    }
+
+    /** Record proof numbers PHI and DELTA for KEY. */
+    private void store(long key, int phi, int delta) {
+        int i = (int) key & _mask;
+        _keys[i] = key;
+        _phi[i] = phi;
+        _delta[i] = delta;
+    }
+
+    /** Having proven a win from BOARD, choose the fastest win against
+     *  the longest defence, and record the resulting line and the number
+     *  of distinct nodes in the proof tree. */
+    private void extract(Board board) {
+        _length = new HashMap<>();
+        _choice = new HashMap<>();
+        measure(board, _plies);
+        HashSet<Long> tree = new HashSet<>();
+        walk(board, _plies, tree, null);
+        _proofSize = tree.size();
+        int remaining = _plies;
+        while (board.winner() == null && remaining > 0) {
+            Integer mv = _choice.get(nodeKey(board, remaining));
+            if (mv == null) {
+                break;
+            }
+            _line.add(Move.unpack(mv));
+            board.makeMove(mv);
+            remaining -= 1;
+        }
+        for (int k = 0; k < _line.size(); k += 1) {
+            board.undo();
+        }
+    }
+
+    /** Return the number of plies in which the attacker wins from BOARD
+     *  with REMAINING plies left, with best play on both sides, according
+     *  to the proved entries of the table, or -1 if the table does not
+     *  prove a win.  Records the chosen moves in _choice. */
+    private int measure(Board board, int remaining) {
+        long key = nodeKey(board, remaining);
+        Integer known = _length.get(key);
+        if (known != null) {
+            return known;
+        }
+        boolean attacking = board.turn() == _attacker;
+        int result = attacking ? -1 : 0;
+        int chosen = Move.NONE;
+        IntMoveList moves = new IntMoveList();
+        board.legalMoves(board.turn(), moves);
+        for (int k = 0; k < moves.size(); k += 1) {
+            int mv = moves.get(k);
+            board.makeMove(mv);
+            Piece winner = board.winner();
+            int len;
+            if (winner != null) {
+                len = winner == _attacker ? 1 : -1;
+            } else if (remaining == 1
+                       || !lookup(nodeKey(board, remaining - 1))
+                       || (attacking ? _foundDelta : _foundPhi) != 0) {
+                len = -1;
+            } else {
+                len = measure(board, remaining - 1);
+                len = len < 0 ? -1 : len + 1;
+            }
+            board.undo();
+            if (attacking && len > 0 && (result < 0 || len < result)) {
+                result = len;
+                chosen = mv;
+            } else if (!attacking && (len < 0 || result < 0)) {
+                result = -1;
+            } else if (!attacking && len > result) {
+                result = len;
+                chosen = mv;
+            }
+        }
+        _length.put(key, result);
+        if (result > 0) {
+            _choice.put(key, chosen);
+        }
+        return result;
+    }
+
+    /** Add the keys of the nodes of the proof tree below BOARD, with
+     *  REMAINING plies left, to TREE, and record them in TABLE if it is
+     *  not null. */
+    private void walk(Board board, int remaining, HashSet<Long> tree,
+                      TranspositionTable table) {
+        long key = nodeKey(board, remaining);
+        if (board.winner() != null || !tree.add(key)) {
+            return;
+        }
+        boolean attacking = board.turn() == _attacker;
+        Integer len = _length.get(key);
+        if (table != null && len != null && len > 0) {
+            int sym = board.canonicalTransform();
+            int score = Search.WINNING_VALUE - (len - 1);
+            table.store(board.symmetricKey(sym), Search.MAX_DEPTH,
+                        attacking ? TranspositionTable.LOWER
+                        : TranspositionTable.UPPER,
+                        attacking ? score : -score,
+                        Symmetry.transform(_choice.get(key), sym));
+        }
+        IntMoveList children = new IntMoveList();
+        if (attacking) {
+            children.add(_choice.get(key));
+        } else {
+            board.legalMoves(board.turn(), children);
+        }
+        for (int k = 0; k < children.size(); k += 1) {
+            board.makeMove(children.get(k));
+            walk(board, remaining - 1, tree, table);
+            board.undo();
+        }
+    }
+
+    /** Record the proof found by the last successful solve of BOARD in
+     *  TABLE, as bounds on the values of the positions of the proof tree,
+     *  so that searches using TABLE find the win at once. */
+    void record(Board board, TranspositionTable table) {
+        if (_length != null && !_line.isEmpty()) {
+            walk(board, _plies, new HashSet<>(), table);
+        }
+    }
+
+    /** Stop the current solve as soon as possible.  May be called from
+     *  any thread. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return the winning line found by the last successful solve: the
+     *  fastest win against the most stubborn defence. */
+    List<Move> line() {
+        return _line;
+    }
+
+    /** Return the number of distinct positions in the last proof. */
+    int proofSize() {
+        return _proofSize;
+    }
+
+    /** Return the number of nodes expanded by the last solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the duration of the last solve in nanoseconds. */
+    long elapsedNanos() {
+        return _elapsed;
+    }
+
+    /** Keys of the table entries. */
+    private final long[] _keys;
+    /** Proof numbers (phi) and disproof numbers (delta) of the entries. */
+    private final int[] _phi, _delta;
+    /** Mask selecting a table index from a key. */
+    private final int _mask;
+    /** Maximum number of nodes per solve. */
+    private final long _nodeLimit;
+    /** The side trying to win. */
+    private Piece _attacker;
+    /** Ply bound of the current solve. */
+    private int _plies;
+    /** Nodes expanded so far. */
+    private long _nodes;
+    /** True iff the node limit has been reached or stop() called. */
+    private boolean _aborted;
+    /** True iff stop() has been called. */
+    private volatile boolean _stopped;
+    /** Results of the last successful lookup. */
+    private int _foundPhi, _foundDelta;
+    /** Lengths of the wins from the nodes of the proof, by key. */
+    private HashMap<Long, Integer> _length;
+    /** Moves chosen at the nodes of the proof, by key. */
+    private HashMap<Long, Integer> _choice;
+    /** Move lists of the nodes on the current path, by plies left. */
+    private IntMoveList[] _moveLists;
+    /** The winning line of the last proof. */
+    private List<Move> _line = new Move.MoveList();
+    /** Size of the last proof tree. */
+    private int _proofSize;
+    /** Value of System.nanoTime() at the start of the last solve. */
+    private long _start;
+    /** Duration of the last solve. */
+    private long _elapsed;
+}
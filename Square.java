@@ -49,6 +49,20 @@ final class Square {
         return _index;
     }
 
+    /** Return my index in a padded board array: a flat array of
+     *  PADDED_SIZE cells holding the board surrounded by a border one
+     *  cell wide, so that a step off the board in any direction lands
+     *  on a border cell rather than outside the array. */
+    int padded() {
+        return _padded;
+    }
+
+    /** Return the index of the square in padded-array cell CELL, or -1
+     *  if CELL is a border cell. */
+    static int indexOfCell(int cell) {
+        return CELL_INDEX[cell];
+    }
+
     /** Return true iff THIS - TO is a valid rook move. */
     boolean isRookMove(Square to) {
         return this != to && (_row == to._row || _col == to._col);
@@ -62,6 +76,16 @@ final class Square {
 
 
 
+    /** Number of cells in a row of a padded board array. */
+    static final int PADDED_WIDTH = BOARD_SIZE + 2;
+
+    /** Number of cells in a padded board array. */
+    static final int PADDED_SIZE = PADDED_WIDTH * PADDED_WIDTH;
+
+    /** STEPS[d] is the difference between the padded indices of
+     *  adjacent squares in direction d (as for rookMove). */
+    static final int[] STEPS = { PADDED_WIDTH, 1, -PADDED_WIDTH, -1 };
+
     /** Definitions of direction for rookMove.  DIR[k] = (dcol, drow)
      *  means that to going one step from (col, row) in direction k,
      *  brings us to (col + dcol, row + drow). */
@@ -170,6 +194,7 @@ final class Square {
         _index = index;
         _row = index / BOARD_SIZE;
         _col = index % BOARD_SIZE;
+        _padded = (_row + 1) * PADDED_WIDTH + _col + 1;
         _str = String.format("%c%d", (char) ('a' + _col), 1 + _row);
     }
 
@@ -203,9 +228,15 @@ final class Square {
     /** SQUARES viewed as a List. */
     static final List<Square> SQUARE_LIST = Arrays.asList(SQUARES);
 
+    /** CELL_INDEX[c] is the index of the square in padded-array cell c,
+     *  or -1 for border cells. */
+    private static final int[] CELL_INDEX = new int[PADDED_SIZE];
+
     static {
+        Arrays.fill(CELL_INDEX, -1);
         for (int i = NUM_SQUARES - 1; i >= 0; i -= 1) {
             SQUARES[i] = new Square(i);
+            CELL_INDEX[SQUARES[i].padded()] = i;
         }
     }
 
@@ -241,6 +272,9 @@ final class Square {
     /** My row and column (redundant, since these are determined by _index). */
     private final int _row, _col;
 
+    /** My index in a padded board array. */
+    private final int _padded;
+
     /** My String denotation. */
     private final String _str;
 
@@ -0,0 +1,131 @@
+package tablut;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.sq;
+
+/** A set of Squares represented as a bit set indexed by Square.index().
+ *  Adding, removing and testing squares take constant time and allocate
+ *  nothing, and first() and next() iterate over the members, in order
+ *  of index, without allocating an Iterator.
+ *  @author Philipp
+ */
+final class SquareSet extends AbstractSet<Square> {
+
+    /** An initially empty set. */
+    SquareSet() {
+    }
+
+    /** A set containing the members of SET. */
+    SquareSet(SquareSet set) {
+        copy(set);
+    }
+
+    /** Make my members those of SET. */
+    void copy(SquareSet set) {
+        _low = set._low;
+        _high = set._high;
+    }
+
+    @Override
+    public int size() {
+        return Long.bitCount(_low) + Long.bitCount(_high);
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        return obj instanceof Square && contains(((Square) obj).index());
+    }
+
+    /** Return true iff the square with index INDEX is a member. */
+    boolean contains(int index) {
+        return index < Long.SIZE ? (_low & (1L << index)) != 0
+            : (_high & (1L << (index - Long.SIZE))) != 0;
+    }
+
+    @Override
+    public boolean add(Square sq) {
+        int index = sq.index();
+        if (contains(index)) {
+            return false;
+        }
+        if (index < Long.SIZE) {
+            _low |= 1L << index;
+        } else {
+            _high |= 1L << (index - Long.SIZE);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object obj) {
+        if (!contains(obj)) {
+            return false;
+        }
+        int index = ((Square) obj).index();
+        if (index < Long.SIZE) {
+            _low &= ~(1L << index);
+        } else {
+            _high &= ~(1L << (index - Long.SIZE));
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        _low = _high = 0;
+    }
+
+    /** Return the least index of a member, or -1 if I am empty. */
+    int first() {
+        return next(-1);
+    }
+
+    /** Return the least index of a member greater than INDEX, or -1 if
+     *  there is none. */
+    int next(int index) {
+        index += 1;
+        if (index < Long.SIZE) {
+            long bits = _low & (-1L << index);
+            if (bits != 0) {
+                return Long.numberOfTrailingZeros(bits);
+            }
+            index = Long.SIZE;
+        }
+        if (index >= NUM_SQUARES) {
+            return -1;
+        }
+        long bits = _high & (-1L << (index - Long.SIZE));
+        return bits == 0 ? -1 : Long.SIZE + Long.numberOfTrailingZeros(bits);
+    }
+
+    @Override
+    public Iterator<Square> iterator() {
+        return new Iterator<Square>() {
+            @Override
+            public boolean hasNext() {
+                return _next >= 0;
+            }
+
+            @Override
+            public Square next() {
+                if (_next < 0) {
+                    throw new NoSuchElementException();
+                }
+                Square result = sq(_next);
+                _next = SquareSet.this.next(_next);
+                return result;
+            }
+
+            /** Index of the next member to be returned, or -1. */
+            private int _next = first();
+        };
+    }
+
+    /** Members with indices 0-63, as bits of _low, and 64-80, as bits
+     *  0-16 of _high. */
+    private long _low, _high;
+}
@@ -0,0 +1,92 @@
+package tablut;
+
+import static tablut.Square.sq;
+import static tablut.Square.BOARD_SIZE;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.SQUARE_LIST;
+
+/** The eight symmetries of the Tablut board (the rotations and
+ *  reflections of the square), which map the throne, the initial
+ *  position and the rules onto themselves.  Symmetry 0 is the identity.
+ *  Positions that are images of one another under a symmetry have the
+ *  same value, and their best moves are images of one another.
+ *  @author Philipp
+ */
+final class Symmetry {
+
+    /** Number of symmetries. */
+    static final int COUNT = 8;
+
+    /** MAP[t][i] is the index of the image under symmetry t of the square
+     *  with index i. */
+    static final int[][] MAP = new int[COUNT][NUM_SQUARES];
+
+    /** INVERSE[t] is the symmetry that undoes symmetry t. */
+    static final int[] INVERSE = new int[COUNT];
+
+    static {
+        int n = BOARD_SIZE - 1;
+        for (Square s : SQUARE_LIST) {
+            int c = s.col(), r = s.row(), i = s.index();
+            MAP[0][i] = sq(c, r).index();
+            MAP[1][i] = sq(r, n - c).index();
+            MAP[2][i] = sq(n - c, n - r).index();
+            MAP[3][i] = sq(n - r, c).index();
+            MAP[4][i] = sq(n - c, r).index();
+            MAP[5][i] = sq(c, n - r).index();
+            MAP[6][i] = sq(r, c).index();
+            MAP[7][i] = sq(n - r, n - c).index();
+        }
+        for (int t = 0; t < COUNT; t += 1) {
+            for (int u = 0; u < COUNT; u += 1) {
+                boolean undoes = true;
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    undoes &= MAP[u][MAP[t][i]] == i;
+                }
+                if (undoes) {
+                    INVERSE[t] = u;
+                }
+            }
+        }
+    }
+
+    /** Return the image of S under symmetry T. */
+    static Square transform(Square s, int t) {
+        return sq(MAP[t][s.index()]);
+    }
+
+    /** Return the image of MOVE under symmetry T, or null if MOVE is
+     *  null. */
+    static Move transform(Move move, int t) {
+        if (move == null) {
+            return null;
+        }
+        return Move.mv(transform(move.from(), t), transform(move.to(), t));
+    }
+
+    /** Return the move whose image under symmetry T is MOVE, or null if
+     *  MOVE is null. */
+    static Move untransform(Move move, int t) {
+        return transform(move, INVERSE[t]);
+    }
+
+    /** Return the image of packed move MOVE under symmetry T, with the
+     *  same flags, or Move.NONE if MOVE is Move.NONE. */
+    static int transform(int move, int t) {
+        if (Move.squares(move) == Move.NONE) {
+            return Move.NONE;
+        }
+        return (move & ~Move.SQUARES_MASK)
+            | (MAP[t][Move.from(move)] << Move.SQ_BITS)
+            | MAP[t][Move.to(move)];
+    }
+
+    /** Return the packed move whose image under symmetry T is MOVE. */
+    static int untransform(int move, int t) {
+        return transform(move, INVERSE[t]);
+    }
+
+    /** Not instantiable. */
+    private Symmetry() {
+    }
+}
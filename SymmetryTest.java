@@ -0,0 +1,54 @@
+package tablut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of board symmetries and canonical position keys.
+ *  @author Philipp
+ */
+public class SymmetryTest {
+
+    /** Moves from the initial position, none of them symmetric. */
+    private static final String[] MOVES = {
+        "e8-g", "c5-3", "i4-h", "c3-2", "h4-1", "e3-a"
+    };
+
+    /** Each symmetry is a permutation undone by its inverse. */
+    @Test
+    public void inverses() {
+        for (int t = 0; t < Symmetry.COUNT; t += 1) {
+            boolean[] seen = new boolean[Square.NUM_SQUARES];
+            for (Square s : Square.SQUARE_LIST) {
+                Square image = Symmetry.transform(s, t);
+                assertFalse(seen[image.index()]);
+                seen[image.index()] = true;
+                assertSame(s, Symmetry.transform(image, Symmetry.INVERSE[t]));
+            }
+        }
+        assertSame(Board.THRONE, Symmetry.transform(Board.THRONE, 3));
+    }
+
+    /** Games that are images of one another under a symmetry pass
+     *  through positions with the same canonical key, and the symmetric
+     *  keys of one are the keys of the other. */
+    @Test
+    public void canonicalKeys() {
+        for (int t = 0; t < Symmetry.COUNT; t += 1) {
+            Board b0 = new Board(), b1 = new Board();
+            assertEquals(b0.canonicalKey(), b1.canonicalKey());
+            for (String mv : MOVES) {
+                Move m = Move.mv(mv);
+                b0.makeMove(m);
+                b1.makeMove(Symmetry.transform(m, t));
+                assertEquals(b0.canonicalKey(), b1.canonicalKey());
+                assertEquals(b0.symmetricKey(t), b1.key());
+                Move back = Symmetry.untransform(Symmetry.transform(m, t),
+                                                 t);
+                assertSame(m, back);
+            }
+            if (t != 0) {
+                assertNotEquals(b0.key(), b1.key());
+            }
+        }
+    }
+}
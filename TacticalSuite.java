@@ -0,0 +1,287 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static tablut.Utils.error;
+
+/** A suite of tactical test positions, each with its known best moves,
+ *  and a runner that measures how quickly the search finds them.
+ *
+ *  A suite is read from lines of the form
+ *
+ *      NAME POSITION MOVE[,MOVE...]
+ *
+ *  where POSITION is in the format of Board.encodedBoard and the MOVEs
+ *  are the solutions; blank lines and text from '#' on are ignored.
+ *  Each position is searched within the same limits, and its result
+ *  gives the move found and, if it is a solution, the nodes searched and
+ *  time taken up to the end of the first iteration after which the
+ *  search kept to solutions.  Results are written one per line, as
+ *
+ *      NAME solved|FAILED MOVE NODES MS
+ *
+ *  and the same lines serve as a baseline against which later runs are
+ *  compared: a position solved in the baseline must still be solved, in
+ *  no more than 1 + NODE_TOLERANCE times as many nodes (or NODE_SLACK
+ *  more, if that is greater, so that the easiest positions do not fail
+ *  on trifles).  Times vary from machine to machine, and are reported
+ *  but not compared.
+ *  @author Philipp
+ */
+final class TacticalSuite {
+
+    /** Default bound on the nodes searched for each position. */
+    static final long DEFAULT_NODES = 200_000;
+
+    /** Fraction by which the nodes to solution may exceed the baseline
+     *  without counting as a regression. */
+    static final double NODE_TOLERANCE = 0.25;
+
+    /** Number of nodes by which the nodes to solution may always exceed
+     *  the baseline. */
+    static final long NODE_SLACK = 500;
+
+    /** Seed of the evaluation noise of every search, so that results are
+     *  reproducible. */
+    private static final long SEED = 0;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    /** The suite read from IN. */
+    TacticalSuite(BufferedReader in) throws IOException {
+        int lineNumber = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            lineNumber += 1;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 3) {
+                throw error("line %d: expected name, position, and moves",
+                            lineNumber);
+            }
+            Board board;
+            try {
+                board = Board.decode(fields[1]);
+            } catch (IllegalArgumentException excp) {
+                throw error("line %d: %s", lineNumber, excp.getMessage());
+            }
+            IntMoveList solutions = new IntMoveList();
+            for (String move : fields[2].split(",")) {
+                Move mv = Move.mv(move);
+                if (mv == null || !board.isLegal(mv)) {
+                    throw error("line %d: bad move: %s", lineNumber, move);
+                }
+                solutions.add(mv.pack());
+            }
+            _problems.add(new Problem(fields[0], board, solutions));
+        }
+    }
+
+    /** Return the number of positions. */
+    int size() {
+        return _problems.size();
+    }
+
+    /** Search each position within LIMITS, in order, with a fresh
+     *  transposition table for each, and return the results.  Unless
+     *  LIMITS bound the depth, searches deepen until they reach its other
+     *  bounds or find a forced result. */
+    List<Result> run(SearchLimits limits) {
+        if (limits.depth() == 0) {
+            limits = limits.withDepth(Search.MAX_DEPTH);
+        }
+        TranspositionTable table =
+            new TranspositionTable(TranspositionTable.DEFAULT_BITS);
+        List<Result> results = new ArrayList<>();
+        for (Problem problem : _problems) {
+            table.clear();
+            results.add(problem.solve(new Search(SEED, table), limits));
+        }
+        return results;
+    }
+
+    /** Return the results recorded in BASELINE, a file of result lines,
+     *  as a map from name to the nodes to solution, which is negative for
+     *  positions that were not solved. */
+    static Map<String, Long> readBaseline(BufferedReader baseline)
+        throws IOException {
+        Map<String, Long> result = new HashMap<>();
+        for (String line = baseline.readLine(); line != null;
+             line = baseline.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                result.put(fields[0], fields[1].equals("solved")
+                           ? Long.parseLong(fields[3]) : -1L);
+            } catch (ArrayIndexOutOfBoundsException
+                     | NumberFormatException excp) {
+                throw error("bad baseline line: %s", line);
+            }
+        }
+        return result;
+    }
+
+    /** Return descriptions of the regressions of RESULTS against
+     *  BASELINE, as returned by readBaseline. */
+    static List<String> regressions(List<Result> results,
+                                    Map<String, Long> baseline) {
+        List<String> found = new ArrayList<>();
+        for (Result result : results) {
+            Long nodes = baseline.get(result.name());
+            if (nodes == null || nodes < 0) {
+                continue;
+            } else if (!result.solved()) {
+                found.add(String.format("%s: no longer solved (found %s)",
+                                        result.name(), result.move()));
+            } else if (result.nodes() > nodes * (1 + NODE_TOLERANCE)
+                       && result.nodes() > nodes + NODE_SLACK) {
+                found.add(String.format("%s: %d nodes to solution, was %d",
+                                        result.name(), result.nodes(),
+                                        nodes));
+            }
+        }
+        return found;
+    }
+
+    /** Return a summary of RESULTS: the numbers solved, and total nodes
+     *  and time to solution of those solved. */
+    static String summary(List<Result> results) {
+        int solved = 0;
+        long nodes = 0, millis = 0;
+        for (Result result : results) {
+            if (result.solved()) {
+                solved += 1;
+                nodes += result.nodes();
+                millis += result.millis();
+            }
+        }
+        return String.format("solved %d/%d, %d nodes, %d ms", solved,
+                             results.size(), nodes, millis);
+    }
+
+    /** A test position. */
+    private static final class Problem {
+
+        /** A position named NAME, with the position of BOARD and the
+         *  packed moves SOLUTIONS. */
+        Problem(String name, Board board, IntMoveList solutions) {
+            _name = name;
+            _board = board;
+            _solutions = solutions;
+        }
+
+        /** Return the result of searching my position with SEARCH within
+         *  LIMITS. */
+        Result solve(Search search, SearchLimits limits) {
+            long[] solution = { -1, 0 };
+            search.setListener(lines -> {
+                if (_solutions.indexOf(lines.get(0).move().pack()) < 0) {
+                    solution[0] = -1;
+                } else if (solution[0] < 0) {
+                    solution[0] = search.stats().nodes();
+                    solution[1] = search.stats().elapsedNanos();
+                }
+            });
+            Move move = search.findMove(new Board(_board), limits);
+            boolean solved =
+                move != null && _solutions.indexOf(move.pack()) >= 0;
+            if (solved && solution[0] < 0) {
+                solution[0] = search.stats().nodes();
+                solution[1] = search.stats().elapsedNanos();
+            } else if (!solved) {
+                solution[0] = search.stats().nodes();
+                solution[1] = search.stats().elapsedNanos();
+            }
+            return new Result(_name, move, solved, solution[0],
+                              solution[1] / NANOS_PER_MS);
+        }
+
+        /** Name of the position. */
+        private final String _name;
+        /** The position. */
+        private final Board _board;
+        /** The solutions, packed. */
+        private final IntMoveList _solutions;
+    }
+
+    /** The result of searching a test position. */
+    static final class Result {
+
+        /** The result for the position named NAME, where the search
+         *  found MOVE, which is a solution iff SOLVED, after NODES nodes
+         *  and MILLIS milliseconds (counted to the solution, if SOLVED). */
+        Result(String name, Move move, boolean solved, long nodes,
+               long millis) {
+            _name = name;
+            _move = move;
+            _solved = solved;
+            _nodes = nodes;
+            _millis = millis;
+        }
+
+        /** Return the name of the position. */
+        String name() {
+            return _name;
+        }
+
+        /** Return the move found, or null if there was none. */
+        Move move() {
+            return _move;
+        }
+
+        /** Return true iff the move found is a solution. */
+        boolean solved() {
+            return _solved;
+        }
+
+        /** Return the nodes searched to the solution, or in all if the
+         *  position was not solved. */
+        long nodes() {
+            return _nodes;
+        }
+
+        /** Return the time to the solution, or of the whole search, in
+         *  milliseconds. */
+        long millis() {
+            return _millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s %d %d", _name,
+                                 _solved ? "solved" : "FAILED",
+                                 _move == null ? "-" : _move, _nodes,
+                                 _millis);
+        }
+
+        /** Name of the position. */
+        private final String _name;
+        /** Move found, or null. */
+        private final Move _move;
+        /** True iff _move is a solution. */
+        private final boolean _solved;
+        /** Nodes searched. */
+        private final long _nodes;
+        /** Time taken in milliseconds. */
+        private final long _millis;
+    }
+
+    /** The positions of the suite. */
+    private final List<Problem> _problems = new ArrayList<>();
+}
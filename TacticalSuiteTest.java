@@ -0,0 +1,111 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the tactical suite and its runner.
+ *  @author Philipp
+ */
+public class TacticalSuiteTest {
+
+    /** The built-in suite is solved within the default budget, without
+     *  regressions against the built-in baseline. */
+    @Test
+    public void builtInSuite() throws IOException {
+        TacticalSuite suite = new TacticalSuite(resource(Main.TACTICS));
+        List<TacticalSuite.Result> results =
+            suite.run(SearchLimits.DEFAULT.withNodes(
+                          TacticalSuite.DEFAULT_NODES));
+        assertEquals(suite.size(), results.size());
+        for (TacticalSuite.Result result : results) {
+            assertTrue(result.toString(), result.solved());
+        }
+        Map<String, Long> baseline =
+            TacticalSuite.readBaseline(resource(Main.TACTICS_BASELINE));
+        assertEquals(suite.size(), baseline.size());
+        assertEquals(List.of(),
+                     TacticalSuite.regressions(results, baseline));
+    }
+
+    /** A position is solved only if the move found is one of its
+     *  solutions, and failing or needing many more nodes than the
+     *  baseline is a regression. */
+    @Test
+    public void regressions() throws IOException {
+        TacticalSuite suite = new TacticalSuite(reader(
+            "# comment\n\n"
+            + "escape " + ESCAPE + " c7-9   # win\n"
+            + "wrong  " + ESCAPE + " c7-8\n"));
+        List<TacticalSuite.Result> results =
+            suite.run(SearchLimits.DEFAULT.withDepth(2));
+        assertTrue(results.get(0).solved());
+        assertEquals(Move.mv("c7-9"), results.get(0).move());
+        assertFalse(results.get(1).solved());
+        assertTrue(results.get(1).toString().startsWith("wrong FAILED"));
+
+        assertEquals(List.of(), TacticalSuite.regressions(
+            results, TacticalSuite.readBaseline(reader(
+                "escape solved c7-9 " + results.get(0).nodes() + " 0\n"
+                + "wrong FAILED c7-9 100 0\n"))));
+        assertEquals(1, TacticalSuite.regressions(
+            results, TacticalSuite.readBaseline(reader(
+                "wrong solved c7-8 100 0\n"))).size());
+        Map<String, Long> baseline = TacticalSuite.readBaseline(reader(
+            "escape solved c7-9 10000 0\n"));
+        assertEquals(List.of(), TacticalSuite.regressions(
+            List.of(solved(12000)), baseline));
+        assertEquals(1, TacticalSuite.regressions(
+            List.of(solved(13000)), baseline).size());
+        baseline = TacticalSuite.readBaseline(reader(
+            "escape solved c7-9 100 0\n"));
+        assertEquals(List.of(), TacticalSuite.regressions(
+            List.of(solved(100 + TacticalSuite.NODE_SLACK)), baseline));
+    }
+
+    /** Return a result in which position "escape" was solved in NODES
+     *  nodes. */
+    private static TacticalSuite.Result solved(long nodes) {
+        return new TacticalSuite.Result("escape", Move.mv("c7-9"), true,
+                                        nodes, 0);
+    }
+
+    /** Malformed suites are rejected. */
+    @Test
+    public void badSuites() throws IOException {
+        for (String bad : new String[] {
+                "escape " + ESCAPE + "\n",
+                "escape Bxx c7-9\n",
+                "escape " + ESCAPE + " c7-7\n",
+                "escape " + ESCAPE + " c7-9,d1-2\n" }) {
+            try {
+                new TacticalSuite(reader(bad));
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** Return a reader of TEXT. */
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    /** Return a reader of the resource NAME. */
+    private static BufferedReader resource(String name) throws IOException {
+        return new BufferedReader(
+            new InputStreamReader(Utils.getResource(name)));
+    }
+
+    /** A position in which White wins at once with c7-9. */
+    private static final String ESCAPE =
+        "W---BBB-------B-------------B-W-W----BB-W-----B---------BK---B----"
+        + "----------------";
+}
@@ -0,0 +1,233 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static tablut.Utils.error;
+
+/** A hash table of search results indexed by position key.  Each entry
+ *  records the depth to which a position was searched, its value (exact,
+ *  or a lower or upper bound), and the best move found.  The table has a
+ *  fixed number of entries, and a new result replaces an old one for a
+ *  different position or for a shallower search of the same position.
+ *
+ *  Entries are stored as a pair of longs, the first holding the key
+ *  exclusive-or'ed with the second.  A reader that observes a torn entry
+ *  (written concurrently by another thread) will see a key mismatch and
+ *  treat it as a miss, so a table may be shared by concurrent searches
+ *  without locking.
+ *
+ *  A table may be saved to a file and its entries loaded into another
+ *  table in a later run.  The file holds a header of HEADER_SIZE bytes
+ *  (MAGIC, FORMAT, Search.VERSION and Zobrist.WHITE_TO_MOVE, which
+ *  identifies the position keys) and the number of entries, followed by
+ *  the entries as pairs of longs, as stored.
+ *  @author Philipp
+ */
+final class TranspositionTable {
+
+    /** Bound types: the stored score is exact, a lower bound, or an upper
+     *  bound. */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** Log2 of the default number of entries. */
+    static final int DEFAULT_BITS = 20;
+
+    /** First word of a saved table ("TBTT"). */
+    static final int MAGIC = 0x54425454;
+
+    /** Version of the format of saved tables. */
+    static final int FORMAT = 1;
+
+    /** Size of the header of a saved table in bytes. */
+    static final int HEADER_SIZE = 32;
+
+    /** Least depth of the entries saved.  Shallower results are cheap to
+     *  recompute. */
+    static final int MIN_SAVED_DEPTH = 2;
+
+    /** Size of the output buffer used by save, in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Bit positions and widths of the fields of a data word. */
+    private static final int MOVE_BITS = 2 * Move.SQ_BITS,
+        DEPTH_SHIFT = MOVE_BITS,
+        DEPTH_BITS = 8, BOUND_SHIFT = DEPTH_SHIFT + DEPTH_BITS,
+        BOUND_BITS = 2, SCORE_SHIFT = Integer.SIZE;
+
+    /** A table with 2**BITS entries (BITS >= 1). */
+    TranspositionTable(int bits) {
+        _keys = new long[1 << bits];
+        _data = new long[1 << bits];
+        _mask = (1 << bits) - 2;
+    }
+
+    /** Return the data word stored for KEY, or 0 if there is none.  The
+     *  fields are extracted with score(), depth(), bound() and move(). */
+    long probe(long key) {
+        int i = (int) key & _mask;
+        long data = _data[i];
+        if ((_keys[i] ^ data) == key) {
+            return data;
+        }
+        data = _data[i + 1];
+        return (_keys[i + 1] ^ data) == key ? data : 0;
+    }
+
+    /** Record that the position with KEY was searched to DEPTH with the
+     *  result SCORE, of type BOUND, and best move MOVE (a packed move,
+     *  possibly Move.NONE).
+     *  Each key may be stored in one of two slots.  The first holds
+     *  the deepest result seen, and the second the most recent one. */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = (int) key & _mask;
+        long old = _data[i];
+        if ((_keys[i] ^ old) == key) {
+            if (depth(old) > depth) {
+                return;
+            }
+        } else if (depth < depth(old)
+                   || (_keys[i + 1] ^ _data[i + 1]) == key) {
+            i += 1;
+        }
+        long data = ((long) score << SCORE_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) Math.min(depth, (1 << DEPTH_BITS) - 1) << DEPTH_SHIFT)
+            | Move.squares(move);
+        _data[i] = data;
+        _keys[i] = key ^ data;
+    }
+
+    /** Write my entries for searches of depth MIN_SAVED_DEPTH or more to
+     *  the file PATH, replacing its contents only once all are written.
+     *  May be called during searches, in which case entries being
+     *  stored may be garbled, and are then ignored by load.  Returns the
+     *  number of entries written. */
+    int save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int count = 0;
+        try (FileChannel out =
+                 FileChannel.open(temp, StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.position(HEADER_SIZE);
+            for (int i = 0; i < _data.length; i += 1) {
+                long key = _keys[i], data = _data[i];
+                if (bound(data) != 0 && depth(data) >= MIN_SAVED_DEPTH) {
+                    if (!buffer.hasRemaining()) {
+                        write(out, buffer);
+                    }
+                    buffer.putLong(key).putLong(data);
+                    count += 1;
+                }
+            }
+            write(out, buffer);
+            buffer.putInt(MAGIC).putInt(FORMAT).putInt(Search.VERSION)
+                .putInt(0).putLong(Zobrist.WHITE_TO_MOVE).putLong(count)
+                .flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer, buffer.position());
+            }
+            out.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /** Store the entries in the file PATH, written by save, as for
+     *  store, and return their number.  The file is read through a
+     *  memory-mapped buffer.  It is an error if the file was not written
+     *  by save with the same search version and position keys. */
+    int load(Path path) throws IOException {
+        try (FileChannel in = FileChannel.open(path,
+                                               StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_SIZE) {
+                throw error("%s: not a saved table", path);
+            }
+            MappedByteBuffer buffer =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw error("%s: not a saved table", path);
+            } else if (buffer.getInt() != FORMAT) {
+                throw error("%s: unsupported table format", path);
+            } else if (buffer.getInt() != Search.VERSION) {
+                throw error("%s: saved by another version of the search",
+                            path);
+            }
+            buffer.getInt();
+            if (buffer.getLong() != Zobrist.WHITE_TO_MOVE) {
+                throw error("%s: saved with other position keys", path);
+            }
+            long count = buffer.getLong();
+            if (count < 0 || HEADER_SIZE + count * 2 * Long.BYTES != size) {
+                throw error("%s: damaged table", path);
+            }
+            for (long k = 0; k < count; k += 1) {
+                long key = buffer.getLong(), data = buffer.getLong();
+                if (bound(data) != 0) {
+                    store(key ^ data, depth(data), bound(data), score(data),
+                          move(data));
+                }
+            }
+            return (int) count;
+        }
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        java.util.Arrays.fill(_keys, 0);
+        java.util.Arrays.fill(_data, 0);
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _data.length;
+    }
+
+    /** Return the score field of DATA. */
+    static int score(long data) {
+        return (int) (data >> SCORE_SHIFT);
+    }
+
+    /** Return the depth field of DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & ((1 << DEPTH_BITS) - 1);
+    }
+
+    /** Return the bound field of DATA (0 for an empty entry). */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & ((1 << BOUND_BITS) - 1);
+    }
+
+    /** Return the move field of DATA, a packed move without flags, or
+     *  Move.NONE if none. */
+    static int move(long data) {
+        return (int) data & ((1 << MOVE_BITS) - 1);
+    }
+
+    /** Write the contents of BUFFER to OUT, and clear it. */
+    private static void write(FileChannel out, ByteBuffer buffer)
+        throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** Keys of the entries, exclusive-or'ed with their data. */
+    private final long[] _keys;
+    /** Data words of the entries. */
+    private final long[] _data;
+    /** Mask selecting the index of the first slot of a key. */
+    private final int _mask;
+}
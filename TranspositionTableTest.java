@@ -0,0 +1,83 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of saving and loading transposition tables.
+ *  @author Philipp
+ */
+public class TranspositionTableTest {
+
+    /** Deep entries survive a save and load into a table of another
+     *  size, and shallow ones are dropped. */
+    @Test
+    public void saveAndLoad() throws IOException {
+        TranspositionTable table = new TranspositionTable(BITS);
+        Random rand = new Random(SEED);
+        long[] keys = new long[ENTRIES];
+        for (int k = 0; k < ENTRIES; k += 1) {
+            keys[k] = rand.nextLong();
+            table.store(keys[k], k % MAX_DEPTH, TranspositionTable.EXACT,
+                        k - ENTRIES / 2, Move.mv("d1-c").pack());
+        }
+        Path file = Files.createTempFile("tablut", ".tt");
+        try {
+            int saved = table.save(file);
+            TranspositionTable copy = new TranspositionTable(BITS + 1);
+            assertEquals(saved, copy.load(file));
+            int found = 0;
+            for (int k = 0; k < ENTRIES; k += 1) {
+                long original = table.probe(keys[k]),
+                    data = copy.probe(keys[k]);
+                int depth = k % MAX_DEPTH;
+                if (depth < TranspositionTable.MIN_SAVED_DEPTH) {
+                    assertEquals(0, data);
+                } else if (original != 0) {
+                    assertEquals(original, data);
+                    found += 1;
+                }
+            }
+            assertEquals(saved, found);
+            assertTrue(found > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Tables saved by other versions of the search are rejected. */
+    @Test
+    public void otherVersion() throws IOException {
+        Path file = Files.createTempFile("tablut", ".tt");
+        try {
+            new TranspositionTable(BITS).save(file);
+            byte[] contents = Files.readAllBytes(file);
+            ByteBuffer.wrap(contents).putInt(2 * Integer.BYTES,
+                                             Search.VERSION + 1);
+            Files.write(file, contents);
+            new TranspositionTable(BITS).load(file);
+            fail("table of another version loaded");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains("version"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Log2 of the size of the tables. */
+    private static final int BITS = 10;
+
+    /** Number of entries stored. */
+    private static final int ENTRIES = 600;
+
+    /** Bound on the depths of the entries stored. */
+    private static final int MAX_DEPTH = 6;
+
+    /** Seed of the keys. */
+    private static final long SEED = 46;
+}
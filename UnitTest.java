@@ -12,7 +12,14 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
+        textui.runClasses(UnitTest.class, SymmetryTest.class,
+                          CaptureTest.class, BoardTest.class,
+                          BatchAnalysisTest.class, GameSessionTest.class,
+                          GameServerTest.class, GameRecordTest.class,
+                          GameArchiveTest.class, PositionIndexTest.class,
+                          JournalTest.class, TranspositionTableTest.class,
+                          RootCacheTest.class, TacticalSuiteTest.class,
+                          BoardFuzzerTest.class, ControllerTest.class);
     }
 
     /** A dummy test as a placeholder for real ones. */
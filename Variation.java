@@ -0,0 +1,70 @@
+package tablut;
+
+import java.util.Collections;
+import java.util.List;
+
+/** One line of analysis: a root move, its value for the side to move and
+ *  the principal variation beginning with that move.  Variations are
+ *  immutable.
+ *  @author Philipp
+ */
+final class Variation {
+
+    /** A variation of value SCORE, searched to DEPTH plies, consisting of
+     *  the moves PV (non-empty). */
+    Variation(int score, int depth, List<Move> pv) {
+        _score = score;
+        _depth = depth;
+        _pv = Collections.unmodifiableList(new Move.MoveList(pv));
+    }
+
+    /** Return the first move. */
+    Move move() {
+        return _pv.get(0);
+    }
+
+    /** Return the value of this line for the side to move at its start,
+     *  positive values being good for that side. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the depth to which the first move was searched. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the principal variation, starting with move(). */
+    List<Move> pv() {
+        return _pv;
+    }
+
+    /** Return score() as text, showing wins as "win N" or "loss N",
+     *  where N is the number of plies to the end of the game. */
+    String scoreString() {
+        if (_score > Search.WILL_WIN_VALUE) {
+            return "win " + (Search.WINNING_VALUE - _score + 1);
+        } else if (_score < -Search.WILL_WIN_VALUE) {
+            return "loss " + (Search.WINNING_VALUE + _score + 1);
+        } else {
+            return Integer.toString(_score);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder pv = new StringBuilder();
+        for (Move mv : _pv) {
+            pv.append(' ').append(mv);
+        }
+        return String.format("depth %d score %s pv%s",
+                             _depth, scoreString(), pv);
+    }
+
+    /** Value for the side to move. */
+    private final int _score;
+    /** Search depth. */
+    private final int _depth;
+    /** Principal variation. */
+    private final List<Move> _pv;
+}
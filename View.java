@@ -7,4 +7,16 @@ interface View {
     /** Update the current view according to the game on CONTROLLER. */
     void update(Controller controller);
 
+    /** Show that an AI search has started in the current position.  By
+     *  default, does nothing. */
+    default void searchStarted() {
+    }
+
+    /** Show that the AI search in progress has completed a search of
+     *  DEPTH plies, finding BEST as the best move so far, at NPS nodes per
+     *  second.  Called on the searching thread.  By default, does
+     *  nothing. */
+    default void searchProgress(Move best, int depth, long nps) {
+    }
+
 }
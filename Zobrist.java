@@ -0,0 +1,73 @@
+package tablut;
+
+import static tablut.Square.NUM_SQUARES;
+
+/** Random keys for Zobrist hashing of Tablut positions.  The key of a
+ *  position is the exclusive or of PIECE_KEYS[p][i] for every square
+ *  with index i holding a piece with value p, so that it can be updated
+ *  incrementally as pieces are placed and removed.  The keys are fixed,
+ *  so that position keys are the same from run to run.
+ *  @author Philipp
+ */
+final class Zobrist {
+
+    /** Number of distinct piece values (including EMPTY). */
+    static final int NUM_PIECES = Piece.values().length;
+
+    /** PIECE_KEYS[p][i] is the key of a piece with value p on the square
+     *  with index i.  The keys for EMPTY are 0. */
+    static final long[][] PIECE_KEYS = new long[NUM_PIECES][NUM_SQUARES];
+
+    /** SYMMETRIC_KEYS[t][p][i] is PIECE_KEYS[p][j], where j is the index
+     *  of the image of square i under symmetry t.  The exclusive or of
+     *  these keys over a position is the key of its image under t. */
+    static final long[][][] SYMMETRIC_KEYS =
+        new long[Symmetry.COUNT][NUM_PIECES][NUM_SQUARES];
+
+    /** Key added to positions in which White is to move. */
+    static final long WHITE_TO_MOVE;
+
+    /** Seed of the key generator. */
+    private static final long KEY_SEED = 0x7AB1075EEDL;
+
+    /** Increment of the SplitMix64 generator. */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** Multipliers and shifts of the SplitMix64 finalizer. */
+    private static final long MIX1 = 0xBF58476D1CE4E5B9L,
+        MIX2 = 0x94D049BB133111EBL;
+    /** Shifts of the SplitMix64 finalizer. */
+    private static final int SHIFT1 = 30, SHIFT2 = 27, SHIFT3 = 31;
+
+    static {
+        long state = KEY_SEED;
+        for (int p = 1; p < NUM_PIECES; p += 1) {
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                state += GOLDEN_GAMMA;
+                PIECE_KEYS[p][i] = mix(state);
+            }
+        }
+        state += GOLDEN_GAMMA;
+        WHITE_TO_MOVE = mix(state);
+        for (int t = 0; t < Symmetry.COUNT; t += 1) {
+            for (int p = 0; p < NUM_PIECES; p += 1) {
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    SYMMETRIC_KEYS[t][p][i] =
+                        PIECE_KEYS[p][Symmetry.MAP[t][i]];
+                }
+            }
+        }
+    }
+
+    /** Return a well-scrambled function of X (the SplitMix64
+     *  finalizer).  Distinct values of X give distinct results. */
+    static long mix(long x) {
+        x = (x ^ (x >>> SHIFT1)) * MIX1;
+        x = (x ^ (x >>> SHIFT2)) * MIX2;
+        return x ^ (x >>> SHIFT3);
+    }
+
+    /** Not instantiable. */
+    private Zobrist() {
+    }
+}